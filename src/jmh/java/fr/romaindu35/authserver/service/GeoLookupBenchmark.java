@@ -0,0 +1,104 @@
+package fr.romaindu35.authserver.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency and allocation of a GeoIP lookup: {@link GeoLocationService#getLocationFromIp(InetAddress)} with a warm
+ * result cache (cached) against {@link GeoLocationService#resolveUncached(InetAddress)}, which reads the
+ * memory-mapped database on every call (uncached).
+ * The addresses are random public IPv4 addresses; the login path sees the same few thousand addresses again and
+ * again, so the cached case reflects it once warm.
+ *
+ * Needs a GeoLite2-City database, given by the GEOIP2_DATABASE_PATH environment variable used by the application:
+ * {@code GEOIP2_DATABASE_PATH=/path/GeoLite2-City.mmdb ./gradlew jmh}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GeoLookupBenchmark {
+
+    // Puissance de deux : le curseur boucle par masque
+    private static final int ADDRESSES = 4096;
+
+    private InetAddress[] addresses;
+    private int next;
+    private GeoLocationService service;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        // Variable d'environnement : elle est transmise à la JVM forkée par JMH, contrairement aux propriétés système
+        String configured = System.getenv("GEOIP2_DATABASE_PATH");
+        if (configured == null || configured.isBlank() || !Files.isRegularFile(Path.of(configured))) {
+            throw new IllegalStateException("Base GeoIP introuvable : renseigner GEOIP2_DATABASE_PATH");
+        }
+
+        service = new GeoLocationService(new SimpleMeterRegistry(), ADDRESSES, Duration.ofHours(1));
+        service.swapReader(GeoLocationService.openReader(Path.of(configured)));
+
+        Random random = new Random(42);
+        addresses = new InetAddress[ADDRESSES];
+        for (int i = 0; i < ADDRESSES; i++) {
+            addresses[i] = publicAddress(random);
+            service.getLocationFromIp(addresses[i]);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        service.shutdown();
+    }
+
+    @Benchmark
+    public GeoLocationService.LocationInfo cached() {
+        return service.getLocationFromIp(nextAddress());
+    }
+
+    @Benchmark
+    public GeoLocationService.Resolution uncached() {
+        return service.resolveUncached(nextAddress());
+    }
+
+    private InetAddress nextAddress() {
+        InetAddress address = addresses[next];
+        next = (next + 1) & (ADDRESSES - 1);
+        return address;
+    }
+
+    private static InetAddress publicAddress(Random random) throws UnknownHostException {
+        while (true) {
+            byte[] bytes = new byte[4];
+            random.nextBytes(bytes);
+            InetAddress address = InetAddress.getByAddress(bytes);
+            int first = bytes[0] & 0xFF;
+            // Hors plages privées, locales et multicast
+            if (first != 0 && first != 10 && first != 127 && first < 224
+                    && !address.isSiteLocalAddress() && !address.isLinkLocalAddress()) {
+                return address;
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package fr.romaindu35.authserver.service;
+
+import eu.bitwalker.useragentutils.UserAgent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one token issuance's User-Agent handling: UserAgentUtils' parsing on every request (uncached) against
+ * {@link UserAgentDictionary#intern(String)} once the dictionary is warm (cached).
+ * The request stream is skewed like real traffic: a few browsers make most of the requests.
+ * The table is replaced by an in-memory map, so a miss costs the parse and no I/O.
+ *
+ * Run with {@code ./gradlew jmh}; the gc profiler reports the allocation per operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserAgentParsingBenchmark {
+
+    // Du plus fréquent au plus rare
+    private static final String[] USER_AGENTS = {
+            "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/126.0.0.0 Safari/537.36",
+            "Mozilla/5.0 (iPhone; CPU iPhone OS 17_5 like Mac OS X) AppleWebKit/605.1.15 (KHTML, like Gecko) Version/17.5 Mobile/15E148 Safari/604.1",
+            "Mozilla/5.0 (Linux; Android 10; K) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/126.0.0.0 Mobile Safari/537.36",
+            "Mozilla/5.0 (Windows NT 10.0; Win64; x64; rv:127.0) Gecko/20100101 Firefox/127.0",
+            "Mozilla/5.0 (Macintosh; Intel Mac OS X 10_15_7) AppleWebKit/605.1.15 (KHTML, like Gecko) Version/17.5 Safari/605.1.15",
+            "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/126.0.0.0 Safari/537.36 Edg/126.0.0.0",
+            "Mozilla/5.0 (Macintosh; Intel Mac OS X 10_15_7) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/126.0.0.0 Safari/537.36",
+            "Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/126.0.0.0 Safari/537.36",
+            "Mozilla/5.0 (iPad; CPU OS 17_5 like Mac OS X) AppleWebKit/605.1.15 (KHTML, like Gecko) Version/17.5 Mobile/15E148 Safari/604.1",
+            "Mozilla/5.0 (X11; Ubuntu; Linux x86_64; rv:127.0) Gecko/20100101 Firefox/127.0",
+            "Mozilla/5.0 (Linux; Android 14; SM-S918B) AppleWebKit/537.36 (KHTML, like Gecko) SamsungBrowser/25.0 Chrome/121.0.0.0 Mobile Safari/537.36",
+            "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/126.0.0.0 Safari/537.36 OPR/111.0.0.0",
+    };
+
+    // Puissance de deux : le curseur boucle par masque
+    private static final int REQUESTS = 4096;
+
+    private String[] requests;
+    private int next;
+    private UserAgentDictionary dictionary;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        requests = new String[REQUESTS];
+        for (int i = 0; i < REQUESTS; i++) {
+            // Loi géométrique : la moitié du trafic sur le premier User-Agent, un quart sur le suivant...
+            int rank = Math.min((int) (-Math.log(1 - random.nextDouble()) / Math.log(2)), USER_AGENTS.length - 1);
+            requests[i] = USER_AGENTS[rank];
+        }
+
+        dictionary = new UserAgentDictionary(new InMemoryJdbcTemplate(), new SimpleMeterRegistry(), 10_000);
+        for (String userAgent : USER_AGENTS) {
+            dictionary.intern(userAgent);
+        }
+    }
+
+    @Benchmark
+    public UserAgent uncached() {
+        return UserAgent.parseUserAgentString(nextRequest());
+    }
+
+    @Benchmark
+    public UserAgentDictionary.Entry cached() {
+        return dictionary.intern(nextRequest());
+    }
+
+    private String nextRequest() {
+        String userAgent = requests[next];
+        next = (next + 1) & (REQUESTS - 1);
+        return userAgent;
+    }
+
+    /**
+     * user_agent_dictionary table in memory: only reached while the dictionary warms up.
+     */
+    private static final class InMemoryJdbcTemplate extends JdbcTemplate {
+
+        private final Map<String, UserAgentDictionary.Entry> byHash = new HashMap<>();
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> List<T> query(String sql, RowMapper<T> rowMapper, Object... args) {
+            String hash = (String) args[0];
+            if (sql.contains("INSERT INTO user_agent_dictionary")) {
+                UserAgentDictionary.Entry entry = new UserAgentDictionary.Entry(byHash.size() + 1,
+                        (String) args[1], (String) args[2], (String) args[3], (String) args[4]);
+                byHash.put(hash, entry);
+                return List.of((T) entry);
+            }
+            UserAgentDictionary.Entry entry = byHash.get(hash);
+            return entry != null ? List.of((T) entry) : List.of();
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package fr.romaindu35.authserver.service;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Platform against virtual request threads (spring.threads.virtual.enabled), on a model of the login path rather than
+ * the running application: each request holds one of the 10 pooled connections (Hikari's default) for a 2 ms query,
+ * then waits 50 ms on the NationsGlory API without holding a connection.
+ * Platform mode runs requests on 200 threads, Tomcat's default server.tomcat.threads.max; virtual mode starts one
+ * virtual thread per request.
+ *
+ * One operation is a burst of {@code concurrency} simultaneous requests: the score is bursts per second, so requests
+ * per second is the score times {@code concurrency}. The p99 of a single request's latency, queueing included, is
+ * printed at the end of each iteration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class VirtualThreadLoadBenchmark {
+
+    private static final int TOMCAT_MAX_THREADS = 200;
+    private static final int CONNECTION_POOL_SIZE = 10;
+    private static final long QUERY_MILLIS = 2;
+    private static final long UPSTREAM_MILLIS = 50;
+
+    @Param({"platform", "virtual"})
+    public String threads;
+
+    @Param({"1000"})
+    public int concurrency;
+
+    private ExecutorService executor;
+    private Semaphore connections;
+    private Timer latency;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        executor = "virtual".equals(threads)
+                ? Executors.newVirtualThreadPerTaskExecutor()
+                : Executors.newFixedThreadPool(TOMCAT_MAX_THREADS);
+        connections = new Semaphore(CONNECTION_POOL_SIZE, true);
+    }
+
+    @Setup(Level.Iteration)
+    public void startIteration() {
+        latency = Timer.builder("request")
+                .publishPercentiles(0.99)
+                .register(new SimpleMeterRegistry());
+    }
+
+    @TearDown(Level.Iteration)
+    public void reportIteration() {
+        for (ValueAtPercentile percentile : latency.takeSnapshot().percentileValues()) {
+            System.out.printf("%s threads, %d concurrent requests: p%.0f = %.1f ms%n",
+                    threads, concurrency, percentile.percentile() * 100, percentile.value(TimeUnit.MILLISECONDS));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.close();
+    }
+
+    @Benchmark
+    public void burst() throws Exception {
+        List<Future<?>> requests = new ArrayList<>(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            long submitted = System.nanoTime();
+            requests.add(executor.submit(() -> {
+                handle();
+                latency.record(System.nanoTime() - submitted, TimeUnit.NANOSECONDS);
+                return null;
+            }));
+        }
+        for (Future<?> request : requests) {
+            request.get();
+        }
+    }
+
+    private void handle() throws InterruptedException {
+        connections.acquire();
+        try {
+            Thread.sleep(QUERY_MILLIS);
+        } finally {
+            connections.release();
+        }
+        Thread.sleep(UPSTREAM_MILLIS);
+    }
+}
@@ -6,7 +6,7 @@ import {formatDistanceToNow} from "date-fns";
 import {fr} from "date-fns/locale";
 import {Globe, Loader2, Monitor, Shield, Smartphone} from "lucide-react";
 import React, {useState} from "react";
-import {useMutation, useQuery, useQueryClient} from "@tanstack/react-query";
+import {useInfiniteQuery, useMutation, useQueryClient} from "@tanstack/react-query";
 import {toast} from "sonner";
 import AuthorizationWithClientDTO from "@/generated/fr/romaindu35/authserver/dto/AuthorizationWithClientDTO";
 import AuthorizationEventDTO from "@/generated/fr/romaindu35/authserver/dto/AuthorizationEventDTO";
@@ -27,15 +27,25 @@ export function ConnectionCard({authorization}: ConnectionCardProps) {
     const [isOpen, setIsOpen] = useState(false);
     const confirm = useConfirm();
 
-    // Fetch events only when accordion is opened
-    const {data: events = [], isLoading: isLoadingHistory} = useQuery({
+    // Fetch events only when accordion is opened, most recent page first
+    const {
+        data: eventPages,
+        isLoading: isLoadingHistory,
+        hasNextPage: hasMoreEvents,
+        fetchNextPage: fetchMoreEvents,
+        isFetchingNextPage: isFetchingMoreEvents,
+    } = useInfiniteQuery({
         queryKey: ['authorization-events', authorization.clientId],
-        queryFn: async () => {
-            return await AuthorizationManagementController.getAuthorizationEvents(authorization.clientId);
+        queryFn: async ({pageParam}) => {
+            return await AuthorizationManagementController.getAuthorizationEvents(authorization.clientId, pageParam);
         },
+        initialPageParam: undefined as string | undefined,
+        getNextPageParam: (lastPage) => lastPage?.nextCursor ?? undefined,
         enabled: isOpen, // Only fetch when accordion is open
     });
 
+    const events = eventPages?.pages.flatMap((page) => page?.events ?? []) ?? [];
+
     // Revoke mutation
     const revokeMutation = useMutation({
         mutationFn: () => AuthorizationManagementController.revokeAuthorization(authorization.clientId),
@@ -181,13 +191,21 @@ export function ConnectionCard({authorization}: ConnectionCardProps) {
                                         .filter((event): event is AuthorizationEventDTO => event !== undefined)
                                         .map((event, index, array) => (
                                             <AuthorizationHistoryItem
-                                                key={event.id}
+                                                key={`${event.id}-${event.eventType}`}
                                                 event={event}
                                                 nextEventType={array[index + 1]?.eventType}
                                                 isFirst={index === 0}
-                                                isLast={index === array.length - 1}
+                                                isLast={index === array.length - 1 && !hasMoreEvents}
                                             />
                                         ))}
+                                    {hasMoreEvents && (
+                                        <Button variant="ghost" size="sm" className="w-full"
+                                                onClick={() => fetchMoreEvents()}
+                                                disabled={isFetchingMoreEvents}>
+                                            {isFetchingMoreEvents && <Loader2 className="h-4 w-4 animate-spin mr-2"/>}
+                                            Afficher plus
+                                        </Button>
+                                    )}
                                 </div>
                             )}
                         </AccordionContent>
@@ -1,6 +1,7 @@
 import {Typography} from "@/components/ui/typography";
 import {ThemeToggle} from "@/components/theme/ThemeToggle";
 import React from "react";
+import yoxoLogo from "@public/images/yoxo_logo_128x128.png";
 
 export default function AuthLayout({children}: { children: React.ReactNode }) {
 
@@ -10,7 +11,7 @@ export default function AuthLayout({children}: { children: React.ReactNode }) {
                 className="col-span-1 flex w-full flex-col gap-4 border border-border p-4 backdrop-blur-[2px] lg:p-8 xl:col-span-2">
                 <div className="flex justify-start">
                     <a href="/" className="flex items-center gap-2">
-                        <img src="/images/yoxo_logo_128x128.png" width={50} height={35} alt="Yoxo"
+                        <img src={yoxoLogo} width={50} height={35} alt="Yoxo"
                              className={"rounded"}/>
                         <Typography variant="h3">
                             Yoxo
@@ -3,6 +3,8 @@ import {Button} from "@/components/ui/button";
 import {Typography} from "@/components/ui/typography";
 import {useAuth} from "@/auth";
 import {AppWindow, Cable, LogOut, User} from "lucide-react";
+import ngLogo from "@public/images/ng_logo.svg";
+import yoxoLogo from "@public/images/yoxo_logo_128x128.png";
 
 import '@/styles/index.css'; /* Permet d'importer les styles globaux + Tailwind CSS */
 
@@ -63,7 +65,7 @@ export default function Home() {
                 <div className="flex gap-2 flex-col text-center">
                     <div className="mx-auto mb-2">
                         <img
-                            src="/images/yoxo_logo_128x128.png"
+                            src={yoxoLogo}
                             alt="Yoxo"
                             className="mx-auto h-20 w-20 rounded-lg"
                         />
@@ -125,7 +127,7 @@ export default function Home() {
                         >
                             Se connecter
                             <img
-                                src="/images/ng_logo.svg"
+                                src={ngLogo}
                                 alt="NationsGlory"
                                 className="ml-2 size-4"
                                 width={16}
@@ -1,8 +1,9 @@
-import {useQuery} from "@tanstack/react-query";
+import {useInfiniteQuery} from "@tanstack/react-query";
 import {AuthorizationManagementController} from "@/generated/endpoints";
 import {Profile} from "@/components/Profile";
 import {ThemeToggle} from "@/components/theme/ThemeToggle";
 import {Loader2, ShieldAlert} from "lucide-react";
+import {Button} from "@/components/ui/button";
 import {ConnectionCard} from "@/components/connections/ConnectionCard";
 import AuthorizationWithClientDTO from "@/generated/fr/romaindu35/authserver/dto/AuthorizationWithClientDTO";
 
@@ -15,28 +16,41 @@ export const config = {
  * Affiche les autorisations actives et inactives avec possibilité de les révoquer.
  */
 export default function ConnectionsPage() {
-    // Fetch active authorizations
+    // Fetch active authorizations (keyset-paginated)
     const {
-        data: activeAuthorizations = [],
-        isLoading: isLoadingActive
-    } = useQuery({
+        data: activePages,
+        isLoading: isLoadingActive,
+        hasNextPage: hasMoreActive,
+        fetchNextPage: fetchMoreActive,
+        isFetchingNextPage: isFetchingMoreActive,
+    } = useInfiniteQuery({
         queryKey: ['active-authorizations'],
-        queryFn: async () => {
-            return await AuthorizationManagementController.getMyActiveAuthorizations();
+        queryFn: async ({pageParam}) => {
+            return await AuthorizationManagementController.getMyActiveAuthorizations(pageParam);
         },
+        initialPageParam: undefined as string | undefined,
+        getNextPageParam: (lastPage) => lastPage?.nextCursor ?? undefined,
     });
 
-    // Fetch inactive authorizations
+    // Fetch inactive authorizations (keyset-paginated)
     const {
-        data: inactiveAuthorizations = [],
-        isLoading: isLoadingInactive
-    } = useQuery({
+        data: inactivePages,
+        isLoading: isLoadingInactive,
+        hasNextPage: hasMoreInactive,
+        fetchNextPage: fetchMoreInactive,
+        isFetchingNextPage: isFetchingMoreInactive,
+    } = useInfiniteQuery({
         queryKey: ['inactive-authorizations'],
-        queryFn: async () => {
-            return await AuthorizationManagementController.getMyInactiveAuthorizations();
+        queryFn: async ({pageParam}) => {
+            return await AuthorizationManagementController.getMyInactiveAuthorizations(pageParam);
         },
+        initialPageParam: undefined as string | undefined,
+        getNextPageParam: (lastPage) => lastPage?.nextCursor ?? undefined,
     });
 
+    const activeAuthorizations = activePages?.pages.flatMap((page) => page?.items ?? []) ?? [];
+    const inactiveAuthorizations = inactivePages?.pages.flatMap((page) => page?.items ?? []) ?? [];
+
     const isLoading = isLoadingActive || isLoadingInactive;
     const hasNoConnections = activeAuthorizations.length === 0 && inactiveAuthorizations.length === 0;
 
@@ -97,6 +111,14 @@ export default function ConnectionsPage() {
                                                 authorization={authorization}
                                             />
                                         ))}
+                                    {hasMoreActive && (
+                                        <Button variant="outline" className="w-full"
+                                                onClick={() => fetchMoreActive()}
+                                                disabled={isFetchingMoreActive}>
+                                            {isFetchingMoreActive && <Loader2 className="h-4 w-4 animate-spin mr-2"/>}
+                                            Afficher plus
+                                        </Button>
+                                    )}
                                 </div>
                             ) : (
                                 <div
@@ -126,6 +148,14 @@ export default function ConnectionsPage() {
                                                 authorization={authorization}
                                             />
                                         ))}
+                                    {hasMoreInactive && (
+                                        <Button variant="outline" className="w-full"
+                                                onClick={() => fetchMoreInactive()}
+                                                disabled={isFetchingMoreInactive}>
+                                            {isFetchingMoreInactive && <Loader2 className="h-4 w-4 animate-spin mr-2"/>}
+                                            Afficher plus
+                                        </Button>
+                                    )}
                                 </div>
                             </div>
                         )}
@@ -1,8 +1,10 @@
 import AuthLayout from "@/layout/AuthLayout";
 import {Button} from "@/components/ui/button";
 import {LoginController} from "@/generated/endpoints";
+import ngLogo from "@public/images/ng_logo.svg";
 
 export default function Login() {
+    const upstreamUnavailable = new URLSearchParams(window.location.search).get("upstream") === "unavailable";
 
     return (
         <AuthLayout>
@@ -25,6 +27,12 @@ export default function Login() {
                     </p>
                 </div>
                 <div className="grid gap-3">
+                    {upstreamUnavailable && (
+                        <p className="rounded-md border border-destructive/50 px-3 py-2 text-sm text-destructive">
+                            NationsGlory ne répond pas pour le moment, votre connexion n'a pas pu être vérifiée.
+                            Réessayez dans quelques instants.
+                        </p>
+                    )}
                     <div className="text-sm text-destructive">
                         <p>A l'heure actuelle, <span className="font-bold">un bug</span> impacte l'oauth. Dans l'attente
                             d'un fix de la part de NationsGlory, voici la démarche à suivre pour vous connecter</p>
@@ -42,7 +50,7 @@ export default function Login() {
                             onClick={() => LoginController.getRedirectURLToNationsGloryOAuth().then((redirect) => {
                                 if (redirect) window.location.href = redirect;
                             })}>
-                        Se connecter avec NationsGlory <img src="/images/ng_logo.svg" alt={"NationsGlory"}
+                        Se connecter avec NationsGlory <img src={ngLogo} alt={"NationsGlory"}
                                                             className={"ml-2 size-4"} width={20} height={20}/>
                     </Button>
                 </div>
@@ -4,6 +4,8 @@ import lombok.Getter;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
+
 @Component
 @Getter
 public class AuthProperties {
@@ -17,4 +19,38 @@ public class AuthProperties {
     @Value("${yoxo.auth.ng-redirect-uri}")
     private String ngRedirectUri;
 
+    // URL de base de l'API NationsGlory (checkToken), surchargeable pour tester contre un serveur local
+    @Value("${yoxo.auth.ng-api-base-url}")
+    private String ngApiBaseUrl;
+
+    @Value("${yoxo.auth.ng-api-connect-timeout}")
+    private Duration ngApiConnectTimeout;
+
+    @Value("${yoxo.auth.ng-api-read-timeout}")
+    private Duration ngApiReadTimeout;
+
+    // Disjoncteur : pourcentage d'échecs ou d'appels lents (sur la fenêtre glissante) au-delà duquel il s'ouvre
+    @Value("${yoxo.auth.ng-api-circuit.failure-rate-threshold}")
+    private float ngApiFailureRateThreshold;
+
+    @Value("${yoxo.auth.ng-api-circuit.slow-call-rate-threshold}")
+    private float ngApiSlowCallRateThreshold;
+
+    @Value("${yoxo.auth.ng-api-circuit.slow-call-duration}")
+    private Duration ngApiSlowCallDuration;
+
+    @Value("${yoxo.auth.ng-api-circuit.sliding-window-size}")
+    private int ngApiSlidingWindowSize;
+
+    @Value("${yoxo.auth.ng-api-circuit.open-duration}")
+    private Duration ngApiOpenDuration;
+
+    // Nombre maximal d'appels simultanés à l'API : au-delà, le callback échoue immédiatement
+    @Value("${yoxo.auth.ng-api-bulkhead.max-concurrent-calls}")
+    private int ngApiMaxConcurrentCalls;
+
+    // last_login_at n'est réécrit que si la valeur stockée est plus ancienne que cette granularité
+    @Value("${yoxo.auth.last-login-granularity}")
+    private Duration lastLoginGranularity;
+
 }
\ No newline at end of file
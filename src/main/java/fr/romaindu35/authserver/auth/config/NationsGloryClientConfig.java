@@ -0,0 +1,100 @@
+package fr.romaindu35.authserver.auth.config;
+
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.micrometer.tagged.TaggedBulkheadMetrics;
+import io.github.resilience4j.micrometer.tagged.TaggedCircuitBreakerMetrics;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestClient;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+
+/**
+ * HTTP client of the NationsGlory public API, shared by all logins.
+ * The JDK HttpClient keeps connections alive in its pool and negotiates HTTP/2 when the server supports it,
+ * so a login storm reuses a few TLS connections instead of opening one per callback.
+ * Built from Spring Boot's RestClient.Builder, calls are observed and reported as http.client.requests metrics.
+ *
+ * Calls are also guarded by a circuit breaker and a bulkhead: when the API degrades, callbacks fail fast instead of
+ * holding servlet threads needed by the OAuth2 endpoints. Both report their state and rejections to Micrometer.
+ */
+@Configuration
+@Slf4j
+@AllArgsConstructor
+public class NationsGloryClientConfig {
+
+    private static final String NATIONS_GLORY = "nationsglory";
+
+    private final AuthProperties authProperties;
+    private final MeterRegistry meterRegistry;
+
+    @Bean
+    public RestClient nationsGloryRestClient(RestClient.Builder restClientBuilder) {
+        HttpClient httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(authProperties.getNgApiConnectTimeout())
+                .build();
+
+        // Borne aussi l'attente de la réponse : un serveur lent ne bloque plus indéfiniment un thread Tomcat
+        JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(httpClient);
+        requestFactory.setReadTimeout(authProperties.getNgApiReadTimeout());
+
+        return restClientBuilder
+                .baseUrl(authProperties.getNgApiBaseUrl())
+                .requestFactory(requestFactory)
+                .build();
+    }
+
+    @Bean
+    public CircuitBreaker nationsGloryCircuitBreaker() {
+        CircuitBreakerConfig config = CircuitBreakerConfig.custom()
+                .slidingWindowSize(authProperties.getNgApiSlidingWindowSize())
+                .minimumNumberOfCalls(Math.min(10, authProperties.getNgApiSlidingWindowSize()))
+                .failureRateThreshold(authProperties.getNgApiFailureRateThreshold())
+                .slowCallRateThreshold(authProperties.getNgApiSlowCallRateThreshold())
+                .slowCallDurationThreshold(authProperties.getNgApiSlowCallDuration())
+                .waitDurationInOpenState(authProperties.getNgApiOpenDuration())
+                // Un jeton refusé (4xx) est une réponse normale de l'API, pas une panne ; un bulkhead plein non plus
+                .ignoreExceptions(HttpClientErrorException.class, BulkheadFullException.class)
+                .build();
+        CircuitBreakerRegistry registry = CircuitBreakerRegistry.of(config);
+        TaggedCircuitBreakerMetrics.ofCircuitBreakerRegistry(registry).bindTo(meterRegistry);
+
+        CircuitBreaker circuitBreaker = registry.circuitBreaker(NATIONS_GLORY);
+        circuitBreaker.getEventPublisher().onStateTransition(event -> {
+            log.warn("NationsGlory API circuit breaker: {}", event.getStateTransition());
+            meterRegistry.counter("yoxo.nationsglory.circuit.transitions",
+                    "from", event.getStateTransition().getFromState().name(),
+                    "to", event.getStateTransition().getToState().name()).increment();
+        });
+        return circuitBreaker;
+    }
+
+    @Bean
+    public Bulkhead nationsGloryBulkhead() {
+        BulkheadConfig config = BulkheadConfig.custom()
+                .maxConcurrentCalls(authProperties.getNgApiMaxConcurrentCalls())
+                .maxWaitDuration(Duration.ZERO)
+                .build();
+        BulkheadRegistry registry = BulkheadRegistry.of(config);
+        TaggedBulkheadMetrics.ofBulkheadRegistry(registry).bindTo(meterRegistry);
+
+        Bulkhead bulkhead = registry.bulkhead(NATIONS_GLORY);
+        Counter rejected = meterRegistry.counter("yoxo.nationsglory.bulkhead.rejected");
+        bulkhead.getEventPublisher().onCallRejected(event -> rejected.increment());
+        return bulkhead;
+    }
+}
@@ -1,18 +1,16 @@
 package fr.romaindu35.authserver.auth.controller;
 
 import com.vaadin.hilla.BrowserCallable;
+import fr.romaindu35.authserver.auth.service.AuthenticatedUser;
+import fr.romaindu35.authserver.auth.service.AuthenticatedUserService;
 import fr.romaindu35.authserver.dto.ClientConfigurationDTO;
 import fr.romaindu35.authserver.dto.ClientDetailsDTO;
 import fr.romaindu35.authserver.dto.ClientListItemDTO;
-import fr.romaindu35.authserver.entity.User;
-import fr.romaindu35.authserver.repository.UserRepository;
 import fr.romaindu35.authserver.service.ClientManagementService;
 import fr.romaindu35.authserver.utils.Permissions;
 import jakarta.annotation.Nonnull;
 import jakarta.annotation.security.PermitAll;
 import lombok.RequiredArgsConstructor;
-import org.springframework.security.core.Authentication;
-import org.springframework.security.core.context.SecurityContextHolder;
 
 import java.util.Arrays;
 import java.util.List;
@@ -29,7 +27,7 @@ import java.util.UUID;
 public class ClientManagementController {
 
     private final ClientManagementService clientManagementService;
-    private final UserRepository userRepository;
+    private final AuthenticatedUserService authenticatedUserService;
 
     /**
      * Crée un nouveau client OAuth2 avec uniquement un nom.
@@ -39,8 +37,8 @@ public class ClientManagementController {
      * @return L'identifiant unique du client créé
      */
     public UUID createClient(String clientName) {
-        User currentUser = getCurrentUser();
-        return clientManagementService.createClient(clientName, currentUser.getId());
+        AuthenticatedUser currentUser = authenticatedUserService.getCurrentUser();
+        return clientManagementService.createClient(clientName, currentUser.userId());
     }
 
     /**
@@ -49,8 +47,8 @@ public class ClientManagementController {
      * @return Liste des clients sous forme de DTOs simplifiés
      */
     public List<ClientListItemDTO> getMyClients() {
-        User currentUser = getCurrentUser();
-        return clientManagementService.getClientsByOwner(currentUser.getId());
+        AuthenticatedUser currentUser = authenticatedUserService.getCurrentUser();
+        return clientManagementService.getClientsByOwner(currentUser.userId());
     }
 
     /**
@@ -61,8 +59,8 @@ public class ClientManagementController {
      * @return Détails complets du client
      */
     public ClientDetailsDTO getClientDetails(UUID clientId) {
-        User currentUser = getCurrentUser();
-        return clientManagementService.getClientDetails(clientId, currentUser.getId());
+        AuthenticatedUser currentUser = authenticatedUserService.getCurrentUser();
+        return clientManagementService.getClientDetails(clientId, currentUser.userId());
     }
 
     /**
@@ -72,8 +70,8 @@ public class ClientManagementController {
      * @param configuration Nouvelle configuration
      */
     public void updateClientConfiguration(UUID clientId, ClientConfigurationDTO configuration) {
-        User currentUser = getCurrentUser();
-        clientManagementService.updateClientConfiguration(clientId, configuration, currentUser.getId());
+        AuthenticatedUser currentUser = authenticatedUserService.getCurrentUser();
+        clientManagementService.updateClientConfiguration(clientId, configuration, currentUser.userId());
     }
 
     /**
@@ -84,8 +82,8 @@ public class ClientManagementController {
      * @return Le nouveau client ID en clair
      */
     public String regenerateClientId(UUID clientId) {
-        User currentUser = getCurrentUser();
-        return clientManagementService.regenerateClientId(clientId, currentUser.getId());
+        AuthenticatedUser currentUser = authenticatedUserService.getCurrentUser();
+        return clientManagementService.regenerateClientId(clientId, currentUser.userId());
     }
 
     /**
@@ -97,8 +95,8 @@ public class ClientManagementController {
      * @return Le nouveau secret en clair
      */
     public String regenerateClientSecret(UUID clientId) {
-        User currentUser = getCurrentUser();
-        return clientManagementService.regenerateClientSecret(clientId, currentUser.getId());
+        AuthenticatedUser currentUser = authenticatedUserService.getCurrentUser();
+        return clientManagementService.regenerateClientSecret(clientId, currentUser.userId());
     }
 
     /**
@@ -108,8 +106,8 @@ public class ClientManagementController {
      * @param clientId Identifiant unique du client
      */
     public void deleteClient(UUID clientId) {
-        User currentUser = getCurrentUser();
-        clientManagementService.deleteClient(clientId, currentUser.getId());
+        AuthenticatedUser currentUser = authenticatedUserService.getCurrentUser();
+        clientManagementService.deleteClient(clientId, currentUser.userId());
     }
 
     /**
@@ -121,21 +119,4 @@ public class ClientManagementController {
     public Permissions.PermissionData[] getAvailableScopes() {
         return Permissions.valuesData();
     }
-
-    /**
-     * Récupère l'utilisateur actuellement connecté depuis le contexte de sécurité.
-     *
-     * @return L'utilisateur connecté
-     * @throws IllegalStateException si aucun utilisateur n'est connecté
-     */
-    private User getCurrentUser() {
-        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-        if (authentication == null || !authentication.isAuthenticated()) {
-            throw new IllegalStateException("Aucun utilisateur authentifié");
-        }
-
-        String username = authentication.getName();
-        return userRepository.findByUsername(username)
-                .orElseThrow(() -> new IllegalStateException("Utilisateur introuvable: " + username));
-    }
 }
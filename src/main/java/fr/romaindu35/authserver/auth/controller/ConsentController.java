@@ -1,10 +1,7 @@
 package fr.romaindu35.authserver.auth.controller;
 
 import com.vaadin.hilla.BrowserCallable;
-import fr.romaindu35.authserver.entity.OAuth2Client;
-import fr.romaindu35.authserver.entity.User;
-import fr.romaindu35.authserver.repository.OAuth2ClientRepository;
-import fr.romaindu35.authserver.repository.UserRepository;
+import fr.romaindu35.authserver.service.ClientDisplayCache;
 import fr.romaindu35.authserver.utils.Permissions;
 import jakarta.annotation.Nonnull;
 import jakarta.annotation.security.PermitAll;
@@ -21,17 +18,18 @@ import java.util.Optional;
 @AllArgsConstructor
 public class ConsentController {
 
-    private final OAuth2ClientRepository oAuth2ClientRepository;
-    private final UserRepository userRepository;
+    private final ClientDisplayCache clientDisplayCache;
 
     public ConsentData getConsentData(String clientId, String scope) {
         Authentication auth = SecurityContextHolder.getContext().getAuthentication();
         Permissions.PermissionData[] permissions = Arrays.stream(scope.split(" ")).map(Permissions::toPermissionData).toArray(Permissions.PermissionData[]::new);
-        Optional<OAuth2Client> clientOpt = oAuth2ClientRepository.findByClientId(clientId);
+        Optional<ClientDisplayCache.ClientDisplay> clientOpt = clientDisplayCache.findByClientId(clientId);
         if (clientOpt.isPresent()) {
-            OAuth2Client client = clientOpt.get();
-            User user = userRepository.findById(client.getOwnerId()).orElseThrow();
-            return new ConsentData(auth.getName(), client.getClientName(), user.getUsername(), permissions);
+            ClientDisplayCache.ClientDisplay client = clientOpt.get();
+            if (client.ownerUsername() == null) {
+                throw new IllegalStateException("Propriétaire introuvable pour le client " + clientId);
+            }
+            return new ConsentData(auth.getName(), client.clientName(), client.ownerUsername(), permissions);
         }
 
         return null;
@@ -1,9 +1,6 @@
 package fr.romaindu35.authserver.auth.service;
 
-import fr.romaindu35.authserver.auth.config.AuthProperties;
 import fr.romaindu35.authserver.auth.controller.LoginController;
-import fr.romaindu35.authserver.entity.User;
-import fr.romaindu35.authserver.repository.UserRepository;
 import fr.romaindu35.authserver.utils.Permissions;
 import jakarta.servlet.http.HttpServletRequest;
 import lombok.AllArgsConstructor;
@@ -11,6 +8,7 @@ import lombok.Getter;
 import lombok.NonNull;
 import lombok.Setter;
 import lombok.ToString;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
@@ -21,59 +19,40 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.client.HttpClientErrorException;
-import org.springframework.web.client.RestTemplate;
 import org.springframework.web.servlet.view.RedirectView;
 
-import java.time.Instant;
 import java.util.HashSet;
-import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
 
 @RestController
+@Slf4j
 @AllArgsConstructor
 public class AuthService {
 
-    private final AuthProperties authProperties;
+    private final NationsGloryClient nationsGloryClient;
     private final LoginController loginController;
-    private final UserRepository userRepository;
+    private final UserLoginService userLoginService;
 
     @GetMapping("/auth/callback/nationsglory")
     public RedirectView callback(@RequestParam("access_token") String accessToken, HttpServletRequest request) {
-        String checkTokenUrl = String.format(
-                "https://publicapi.nationsglory.fr/oauth/checkToken?access_token=%s&client_secret=%s",
-                accessToken,
-                authProperties.getNgClientSecret()
-        );
-        RestTemplate restTemplate = new RestTemplate();
         TokenResponse tokenResponse;
         try {
-            tokenResponse = restTemplate.getForObject(checkTokenUrl, TokenResponse.class);
+            tokenResponse = nationsGloryClient.checkToken(accessToken);
         } catch (HttpClientErrorException.Unauthorized e) {
             return new RedirectView(loginController.getRedirectURLToNationsGloryOAuth());
+        } catch (NationsGloryClient.UnavailableException e) {
+            // API NationsGlory indisponible : retour immédiat sur la page de connexion, qui invite à réessayer
+            log.warn("NationsGlory checkToken unavailable: {}", e.getCause().toString());
+            return new RedirectView("/login?upstream=unavailable");
         }
-        Optional<User> userOpt = userRepository.findByUsername(tokenResponse.getUsername());
+        UserLoginService.LoggedUser user = userLoginService.recordLogin(tokenResponse.getUsername());
 
         Set<Permissions> userPermissions = new HashSet<>(Set.of(Permissions.getAlwaysGrantedPermissions()));
-        userOpt.ifPresentOrElse(
-                user -> {
-                    user.setLastLoginAt(Instant.now());
-                    userRepository.save(user);
+        userPermissions.addAll(user.additionalPermissions());
 
-                    userPermissions.addAll(user.getAdditionalPermissions());
-                },
-                () -> {
-                    // L'utilisateur n'existe pas, on le crée
-                    User newUser = new User();
-                    newUser.setUsername(tokenResponse.getUsername());
-                    newUser.setCreatedAt(Instant.now());
-                    newUser.setLastLoginAt(Instant.now());
-                    newUser.setAdditionalPermissions(new HashSet<>());
-                    userRepository.save(newUser);
-                }
-        );
-
-        Authentication auth = new UsernamePasswordAuthenticationToken(tokenResponse.getUsername(), null, userPermissions.stream().map(p -> new SimpleGrantedAuthority(p.getScopeName())).collect(Collectors.toSet()));
+        AuthenticatedUser principal = new AuthenticatedUser(user.id(), tokenResponse.getUsername(), Permissions.toMask(userPermissions));
+        Authentication auth = new UsernamePasswordAuthenticationToken(principal, null, userPermissions.stream().map(p -> new SimpleGrantedAuthority(p.getScopeName())).collect(Collectors.toSet()));
         SecurityContextHolder.getContext().setAuthentication(auth);
         request.getSession().setAttribute("SPRING_SECURITY_CONTEXT", SecurityContextHolder.getContext());
 
@@ -0,0 +1,54 @@
+package fr.romaindu35.authserver.auth.service;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import fr.romaindu35.authserver.utils.Permissions;
+import org.springframework.security.core.AuthenticatedPrincipal;
+import org.springframework.security.core.Authentication;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Principal of a user logged in through NationsGlory.
+ * Stored in the security context and, through the authentication, in the OAuth2 authorization attributes:
+ * Hilla endpoints, token issuance and history tracking read the user id and permissions from it instead of
+ * looking the user up by username.
+ * The permissions are those of the login; token refreshes re-read them from the users table, so a removed
+ * permission is not carried over by a long-lived refresh token.
+ *
+ * @param userId         the user id
+ * @param username       the NationsGlory username, also the authentication name
+ * @param permissionMask all the permissions of the user (always granted included), see {@link Permissions#toMask}
+ */
+public record AuthenticatedUser(UUID userId, String username, int permissionMask)
+        implements AuthenticatedPrincipal, Serializable {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    @JsonIgnore
+    public String getName() {
+        return username;
+    }
+
+    public Set<Permissions> permissions() {
+        return Permissions.fromMask(permissionMask);
+    }
+
+    /**
+     * Extracts the principal of an authentication, if it is an {@link AuthenticatedUser}.
+     * Sessions and authorizations created before this principal existed hold the username only.
+     *
+     * @param authentication the authentication, may be null
+     * @return the principal, or null if the authentication does not carry one
+     */
+    public static AuthenticatedUser of(Authentication authentication) {
+        if (authentication != null && authentication.getPrincipal() instanceof AuthenticatedUser user) {
+            return user;
+        }
+        return null;
+    }
+}
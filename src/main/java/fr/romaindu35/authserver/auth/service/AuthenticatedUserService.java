@@ -0,0 +1,68 @@
+package fr.romaindu35.authserver.auth.service;
+
+import fr.romaindu35.authserver.repository.UserRepository;
+import fr.romaindu35.authserver.utils.Permissions;
+import lombok.AllArgsConstructor;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Resolves the {@link AuthenticatedUser} of an authentication.
+ * The principal normally carries it; authentications created before it existed (sessions, authorizations)
+ * only have the username and fall back to a lookup in the users table.
+ */
+@Service
+@AllArgsConstructor
+public class AuthenticatedUserService {
+
+    private final UserRepository userRepository;
+
+    /**
+     * Récupère l'utilisateur actuellement connecté.
+     *
+     * @return L'utilisateur connecté
+     * @throws IllegalStateException si aucun utilisateur n'est connecté
+     */
+    public AuthenticatedUser getCurrentUser() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || !authentication.isAuthenticated()) {
+            throw new IllegalStateException("Aucun utilisateur authentifié");
+        }
+        return resolve(authentication)
+                .orElseThrow(() -> new IllegalStateException("Utilisateur introuvable: " + authentication.getName()));
+    }
+
+    /**
+     * Resolves the user of an authentication.
+     *
+     * @param authentication the authentication
+     * @return the user, or empty if the authentication is not a known user
+     */
+    public Optional<AuthenticatedUser> resolve(Authentication authentication) {
+        AuthenticatedUser user = AuthenticatedUser.of(authentication);
+        if (user != null) {
+            return Optional.of(user);
+        }
+        return findByUsername(authentication.getName());
+    }
+
+    /**
+     * Looks a user up by username, for authentications that do not carry an {@link AuthenticatedUser}.
+     *
+     * @param username the username
+     * @return the user, or empty if unknown
+     */
+    public Optional<AuthenticatedUser> findByUsername(String username) {
+        return userRepository.findByUsername(username).map(user -> {
+            Set<Permissions> permissions = new HashSet<>(user.getAdditionalPermissions());
+            permissions.addAll(Arrays.asList(Permissions.getAlwaysGrantedPermissions()));
+            return new AuthenticatedUser(user.getId(), user.getUsername(), Permissions.toMask(permissions));
+        });
+    }
+}
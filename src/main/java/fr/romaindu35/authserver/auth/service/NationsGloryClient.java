@@ -0,0 +1,63 @@
+package fr.romaindu35.authserver.auth.service;
+
+import fr.romaindu35.authserver.auth.config.AuthProperties;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import lombok.AllArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.client.RestClientException;
+
+import java.util.function.Supplier;
+
+/**
+ * Calls to the NationsGlory public API, through the circuit breaker and the bulkhead.
+ */
+@Service
+@AllArgsConstructor
+public class NationsGloryClient {
+
+    private final RestClient nationsGloryRestClient;
+    private final CircuitBreaker nationsGloryCircuitBreaker;
+    private final Bulkhead nationsGloryBulkhead;
+    private final AuthProperties authProperties;
+
+    /**
+     * Validates a NationsGlory access token and returns the user it belongs to.
+     * The URI template keeps the token out of the metric tags.
+     *
+     * @param accessToken the access token received on the callback
+     * @return the token details
+     * @throws HttpClientErrorException.Unauthorized if the token is not valid
+     * @throws UnavailableException if the API cannot be reached, fails, or the circuit breaker or bulkhead rejects the call
+     */
+    public AuthService.TokenResponse checkToken(String accessToken) {
+        Supplier<AuthService.TokenResponse> call = () -> nationsGloryRestClient.get()
+                .uri("/oauth/checkToken?access_token={accessToken}&client_secret={clientSecret}",
+                        accessToken, authProperties.getNgClientSecret())
+                .retrieve()
+                .body(AuthService.TokenResponse.class);
+
+        // Disjoncteur à l'extérieur : tant qu'il est ouvert, l'appel est rejeté sans occuper le bulkhead
+        try {
+            return CircuitBreaker.decorateSupplier(nationsGloryCircuitBreaker,
+                    Bulkhead.decorateSupplier(nationsGloryBulkhead, call)).get();
+        } catch (HttpClientErrorException e) {
+            throw e;
+        } catch (CallNotPermittedException | BulkheadFullException | RestClientException e) {
+            throw new UnavailableException(e);
+        }
+    }
+
+    /**
+     * The NationsGlory API is unavailable; the user should retry later.
+     */
+    public static class UnavailableException extends RuntimeException {
+        public UnavailableException(Throwable cause) {
+            super("NationsGlory API unavailable", cause);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package fr.romaindu35.authserver.auth.service;
+
+import fr.romaindu35.authserver.auth.config.AuthProperties;
+import fr.romaindu35.authserver.utils.Permissions;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Service;
+
+import java.sql.Array;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Records a successful login in the users table.
+ * A login is a single statement: the user is created on first login, and last_login_at is only rewritten when the
+ * stored value is older than the configured granularity, so repeated logins do not produce dead tuples in users
+ * nor churn idx_users_last_login_at.
+ */
+@Service
+@Slf4j
+@AllArgsConstructor
+public class UserLoginService {
+
+    // Quand la ligne existe et est assez récente, DO UPDATE ... WHERE ne renvoie rien : la seconde branche la relit
+    private static final String LOGIN_SQL = """
+            WITH upsert AS (
+                INSERT INTO users (username, created_at, last_login_at)
+                VALUES (?, ?, ?)
+                ON CONFLICT (username) DO UPDATE
+                    SET last_login_at = EXCLUDED.last_login_at
+                    WHERE users.last_login_at < EXCLUDED.last_login_at - make_interval(secs => ?)
+                RETURNING id, additional_permissions
+            )
+            SELECT id, additional_permissions FROM upsert
+            UNION ALL
+            SELECT id, additional_permissions FROM users
+            WHERE username = ? AND NOT EXISTS (SELECT 1 FROM upsert)
+            """;
+
+    private static final RowMapper<LoggedUser> LOGGED_USER_ROW_MAPPER = (rs, rowNum) -> {
+        Set<Permissions> permissions = EnumSet.noneOf(Permissions.class);
+        Array array = rs.getArray("additional_permissions");
+        if (array != null) {
+            for (String name : (String[]) array.getArray()) {
+                permissions.add(Permissions.valueOf(name));
+            }
+        }
+        return new LoggedUser(rs.getObject("id", UUID.class), permissions);
+    };
+
+    private final JdbcTemplate jdbcTemplate;
+    private final AuthProperties authProperties;
+
+    /**
+     * Creates the user on first login, or records the login of an existing user.
+     *
+     * @param username the NationsGlory username
+     * @return the user id and its additional permissions
+     */
+    public LoggedUser recordLogin(String username) {
+        Timestamp now = Timestamp.from(Instant.now());
+        double granularity = authProperties.getLastLoginGranularity().toMillis() / 1000.0;
+
+        List<LoggedUser> result = jdbcTemplate.query(LOGIN_SQL, LOGGED_USER_ROW_MAPPER,
+                username, now, now, granularity, username);
+        if (result.isEmpty()) {
+            // Utilisateur créé par une connexion concurrente après l'instantané de la requête : il est visible maintenant
+            log.debug("Concurrent first login for {}, retrying", username);
+            result = jdbcTemplate.query(LOGIN_SQL, LOGGED_USER_ROW_MAPPER, username, now, now, granularity, username);
+        }
+        return result.getFirst();
+    }
+
+    /**
+     * A user who just logged in.
+     *
+     * @param id the user id
+     * @param additionalPermissions the permissions granted to this user on top of the always granted ones
+     */
+    public record LoggedUser(UUID id, Set<Permissions> additionalPermissions) {
+    }
+}
@@ -6,14 +6,24 @@ import com.nimbusds.jose.jwk.RSAKey;
 import com.nimbusds.jose.jwk.source.ImmutableJWKSet;
 import com.nimbusds.jose.jwk.source.JWKSource;
 import com.nimbusds.jose.proc.SecurityContext;
+import fr.romaindu35.authserver.auth.service.AuthenticatedUser;
+import fr.romaindu35.authserver.auth.service.AuthenticatedUserService;
+import fr.romaindu35.authserver.filter.AuthenticatedClientRateLimitFilter;
 import fr.romaindu35.authserver.repository.OAuth2AuthorizationHistoryRepository;
 import fr.romaindu35.authserver.repository.OAuth2ClientRepository;
 import fr.romaindu35.authserver.repository.UserRepository;
+import fr.romaindu35.authserver.service.AuthorizationLockService;
+import fr.romaindu35.authserver.service.CachingOAuth2AuthorizationConsentService;
+import fr.romaindu35.authserver.service.ClientDisplayCache;
+import fr.romaindu35.authserver.service.ClientRateLimiter;
 import fr.romaindu35.authserver.service.JpaRegisteredClientRepository;
 import fr.romaindu35.authserver.service.OAuth2AuthorizationRevocationService;
 import fr.romaindu35.authserver.service.OAuth2AuthorizationTrackingService;
+import fr.romaindu35.authserver.service.SessionCounterService;
 import fr.romaindu35.authserver.service.TrackingOAuth2AuthorizationService;
+import fr.romaindu35.authserver.service.UserAgentDictionary;
 import fr.romaindu35.authserver.utils.Permissions;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -24,12 +34,14 @@ import org.springframework.security.config.Customizer;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configurers.oauth2.server.authorization.OAuth2AuthorizationServerConfigurer;
 import org.springframework.security.core.Authentication;
+import org.springframework.security.jackson.SecurityJacksonModules;
 import org.springframework.security.oauth2.core.AuthorizationGrantType;
 import org.springframework.security.oauth2.server.authorization.JdbcOAuth2AuthorizationConsentService;
 import org.springframework.security.oauth2.server.authorization.JdbcOAuth2AuthorizationService;
 import org.springframework.security.oauth2.server.authorization.OAuth2AuthorizationConsentService;
 import org.springframework.security.oauth2.server.authorization.OAuth2AuthorizationService;
 import org.springframework.security.oauth2.server.authorization.client.RegisteredClientRepository;
+import org.springframework.security.oauth2.server.authorization.jackson.OAuth2AuthorizationServerJacksonModule;
 import org.springframework.security.oauth2.server.authorization.token.JwtEncodingContext;
 import org.springframework.security.oauth2.server.authorization.token.OAuth2TokenCustomizer;
 import org.springframework.security.oauth2.server.authorization.web.authentication.ClientSecretBasicAuthenticationConverter;
@@ -38,15 +50,19 @@ import org.springframework.security.oauth2.server.authorization.web.authenticati
 import org.springframework.security.oauth2.server.authorization.web.authentication.PublicClientAuthenticationConverter;
 import org.springframework.security.oauth2.server.authorization.web.authentication.X509ClientCertificateAuthenticationConverter;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.access.intercept.AuthorizationFilter;
 import org.springframework.security.web.authentication.DelegatingAuthenticationConverter;
+import tools.jackson.databind.json.JsonMapper;
+import tools.jackson.databind.jsontype.BasicPolymorphicTypeValidator;
 
 import java.io.IOException;
 import java.security.KeyStore;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.security.cert.CertificateException;
+import java.time.Duration;
 import java.util.Arrays;
-import java.util.HashSet;
+import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -55,7 +71,7 @@ public class AuthorizationServerConfig {
 
     @Bean
     @Order(1)
-    public SecurityFilterChain authServerSecurityFilterChain(HttpSecurity http) {
+    public SecurityFilterChain authServerSecurityFilterChain(HttpSecurity http, ClientRateLimiter clientRateLimiter) {
         OAuth2AuthorizationServerConfigurer oAuth2AuthorizationServerConfigurer = new OAuth2AuthorizationServerConfigurer();
         http.securityMatcher(oAuth2AuthorizationServerConfigurer.getEndpointsMatcher());
         http.with(oAuth2AuthorizationServerConfigurer, configurer -> {
@@ -76,6 +92,8 @@ public class AuthorizationServerConfig {
                 });
         });
         http.cors(Customizer.withDefaults());
+        // Après l'authentification du client, avant les endpoints (ajoutés après AuthorizationFilter)
+        http.addFilterBefore(new AuthenticatedClientRateLimitFilter(clientRateLimiter), AuthorizationFilter.class);
         http.authorizeHttpRequests(authorize -> authorize
                 .anyRequest().authenticated()
         );
@@ -94,21 +112,25 @@ public class AuthorizationServerConfig {
     @Bean
     public OAuth2AuthorizationService authorizationService(JdbcTemplate jdbcTemplate,
                                                            RegisteredClientRepository registeredClientRepository,
-                                                           OAuth2AuthorizationTrackingService trackingService) {
-        JdbcOAuth2AuthorizationService jdbcService = new JdbcOAuth2AuthorizationService(jdbcTemplate, registeredClientRepository);
-        return new TrackingOAuth2AuthorizationService(jdbcService, trackingService);
+                                                           OAuth2AuthorizationTrackingService trackingService,
+                                                           SessionCounterService sessionCounterService) {
+        JdbcOAuth2AuthorizationService jdbcService = jdbcAuthorizationService(jdbcTemplate, registeredClientRepository);
+        return new TrackingOAuth2AuthorizationService(jdbcService, trackingService, sessionCounterService);
     }
 
     @Bean
     public OAuth2AuthorizationRevocationService oAuth2AuthorizationRevocationService(OAuth2AuthorizationHistoryRepository authorizationHistoryRepository,
-                                                                                     OAuth2AuthorizationConsentService authorizationConsentService,
+                                                                                     CachingOAuth2AuthorizationConsentService authorizationConsentService,
                                                                                      JdbcTemplate jdbcTemplate,
                                                                                      UserRepository userRepository,
-                                                                                     OAuth2ClientRepository clientRepository,
-                                                                                     RegisteredClientRepository registeredClientRepository) {
+                                                                                     ClientDisplayCache clientDisplayCache,
+                                                                                     RegisteredClientRepository registeredClientRepository,
+                                                                                     AuthorizationLockService authorizationLockService,
+                                                                                     SessionCounterService sessionCounterService,
+                                                                                     UserAgentDictionary userAgentDictionary) {
         // Manually instantiate the JDBC service here to break the circular dependency.
         // This instance is isolated and won't be picked up by the TrackingService or Spring Security auto-config.
-        JdbcOAuth2AuthorizationService jdbcService = new JdbcOAuth2AuthorizationService(jdbcTemplate, registeredClientRepository);
+        JdbcOAuth2AuthorizationService jdbcService = jdbcAuthorizationService(jdbcTemplate, registeredClientRepository);
 
         return new OAuth2AuthorizationRevocationService(
                 authorizationHistoryRepository,
@@ -116,13 +138,45 @@ public class AuthorizationServerConfig {
                 authorizationConsentService,
                 jdbcTemplate,
                 userRepository,
-                clientRepository
+                clientDisplayCache,
+                authorizationLockService,
+                sessionCounterService,
+                userAgentDictionary
         );
     }
 
+    /**
+     * JDBC authorization service whose attribute mapper accepts {@link AuthenticatedUser} principals.
+     * The Spring Security Jackson modules only deserialize allowlisted types; the principal of the authorization
+     * (stored in its attributes) is one of them.
+     */
+    private static JdbcOAuth2AuthorizationService jdbcAuthorizationService(JdbcTemplate jdbcTemplate,
+                                                                           RegisteredClientRepository registeredClientRepository) {
+        ClassLoader classLoader = JdbcOAuth2AuthorizationService.class.getClassLoader();
+        BasicPolymorphicTypeValidator.Builder typeValidator = BasicPolymorphicTypeValidator.builder()
+                .allowIfSubType(AuthenticatedUser.class);
+        JsonMapper jsonMapper = JsonMapper.builder()
+                .addModules(SecurityJacksonModules.getModules(classLoader, typeValidator))
+                .addModule(new OAuth2AuthorizationServerJacksonModule())
+                .build();
+
+        JdbcOAuth2AuthorizationService jdbcService = new JdbcOAuth2AuthorizationService(jdbcTemplate, registeredClientRepository);
+        jdbcService.setAuthorizationRowMapper(
+                new JdbcOAuth2AuthorizationService.JsonMapperOAuth2AuthorizationRowMapper(registeredClientRepository, jsonMapper));
+        jdbcService.setAuthorizationParametersMapper(
+                new JdbcOAuth2AuthorizationService.JsonMapperOAuth2AuthorizationParametersMapper(jsonMapper));
+        return jdbcService;
+    }
+
     @Bean
-    public OAuth2AuthorizationConsentService authorizationConsentService(JdbcTemplate jdbcTemplate, RegisteredClientRepository registeredClientRepository) {
-        return new JdbcOAuth2AuthorizationConsentService(jdbcTemplate, registeredClientRepository);
+    public CachingOAuth2AuthorizationConsentService authorizationConsentService(JdbcTemplate jdbcTemplate,
+                                                                                RegisteredClientRepository registeredClientRepository,
+                                                                                MeterRegistry meterRegistry,
+                                                                                @Value("${yoxo.consent.cache-size}") long cacheSize,
+                                                                                @Value("${yoxo.consent.cache-ttl}") Duration cacheTtl,
+                                                                                @Value("${yoxo.consent.granted-cache-ttl}") Duration grantedCacheTtl) {
+        OAuth2AuthorizationConsentService jdbcService = new JdbcOAuth2AuthorizationConsentService(jdbcTemplate, registeredClientRepository);
+        return new CachingOAuth2AuthorizationConsentService(jdbcService, meterRegistry, cacheSize, cacheTtl, grantedCacheTtl);
     }
 
     @Bean
@@ -140,7 +194,7 @@ public class AuthorizationServerConfig {
     }
 
     @Bean
-    public OAuth2TokenCustomizer<JwtEncodingContext> tokenCustomizer(UserRepository userRepository) {
+    public OAuth2TokenCustomizer<JwtEncodingContext> tokenCustomizer(AuthenticatedUserService authenticatedUserService) {
         return context -> {
             // Par définition, un client_credentials n'a pas d'utilisateur associé. On ne filtre donc pas les scopes dans ce cas.
             // Pas besoin de faire du filtrage sur les scopes puisque spring l'aurait bloqué avant d'arriver ici
@@ -149,14 +203,16 @@ public class AuthorizationServerConfig {
             }
 
             Authentication principal = context.getPrincipal();
-            String username = principal.getName();
-
-            // On recupère l'ensemble des permissions que possède l'utilisateur
-            Set<Permissions> userPermissions = new HashSet<>();
-            userRepository.findByUsername(username).ifPresent((user) -> {
-                userPermissions.addAll(user.getAdditionalPermissions());
-                userPermissions.addAll(Arrays.stream(Permissions.getAlwaysGrantedPermissions()).toList());
-            });
+
+            // On recupère l'ensemble des permissions que possède l'utilisateur. Lors d'un refresh, elles sont relues
+            // en base : un retrait de permission doit s'appliquer sans attendre la prochaine connexion. Le principal
+            // (permissions de la connexion) ne sert qu'à l'échange initial du code d'autorisation.
+            Optional<AuthenticatedUser> user = AuthorizationGrantType.REFRESH_TOKEN.equals(context.getAuthorizationGrantType())
+                    ? authenticatedUserService.findByUsername(principal.getName())
+                    : authenticatedUserService.resolve(principal);
+            Set<Permissions> userPermissions = user
+                    .map(AuthenticatedUser::permissions)
+                    .orElse(Set.of());
 
             Set<String> userScopes = userPermissions.stream()
                     .map(Permissions::getScopeName)
@@ -0,0 +1,231 @@
+package fr.romaindu35.authserver.config;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.task.SimpleAsyncTaskSchedulerCustomizer;
+import org.springframework.boot.task.ThreadPoolTaskSchedulerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One HikariCP pool per {@link Workload}, behind a routing DataSource used by JPA, JdbcTemplate, Flyway and sessions.
+ * The pool is chosen when a connection is obtained (at transaction start), from the workload of the current thread:
+ * Hilla calls are assigned by the WorkloadFilter, scheduled jobs by the scheduler's task decorator, everything else
+ * uses the protocol pool. Each pool has its own size and acquisition timeout, and reports its hikaricp.* metrics
+ * under its own pool name.
+ *
+ * When a replica is configured, read-only transactions of the management UI are sent to it, unless the user wrote
+ * recently (see {@link ReadYourWritesGuard}). Connections are obtained lazily, at the first statement, once the
+ * transaction's read-only flag is known.
+ */
+@Configuration
+@Slf4j
+public class DataSourceConfig {
+
+    private static final String REPLICA = "replica";
+    private static final String PRIMARY = "primary";
+
+    @Bean
+    public HikariDataSource protocolDataSource(Environment environment) {
+        return createPool(environment, "protocol");
+    }
+
+    @Bean
+    public HikariDataSource managementDataSource(Environment environment) {
+        return createPool(environment, "management");
+    }
+
+    @Bean
+    public HikariDataSource maintenanceDataSource(Environment environment) {
+        return createPool(environment, "maintenance");
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(@Qualifier("protocolDataSource") DataSource protocol,
+                                 @Qualifier("managementDataSource") DataSource management,
+                                 @Qualifier("maintenanceDataSource") DataSource maintenance,
+                                 ReadYourWritesGuard readYourWritesGuard,
+                                 Environment environment,
+                                 MeterRegistry meterRegistry) {
+        WorkloadRoutingDataSource primary = new WorkloadRoutingDataSource(readYourWritesGuard);
+        primary.setTargetDataSources(Map.of(
+                Workload.PROTOCOL, protocol,
+                Workload.MANAGEMENT, management,
+                Workload.MAINTENANCE, maintenance
+        ));
+        primary.setDefaultTargetDataSource(protocol);
+        primary.initialize();
+
+        ReplicaAwareDataSource dataSource = new ReplicaAwareDataSource(primary);
+        String replicaUrl = environment.getProperty("yoxo.datasource.replica.url", "");
+        if (!replicaUrl.isBlank()) {
+            HikariDataSource replica = createReplicaPool(environment, replicaUrl, meterRegistry);
+            ReplicaRoutingDataSource readOnly = new ReplicaRoutingDataSource(readYourWritesGuard);
+            readOnly.setTargetDataSources(Map.of(REPLICA, replica, PRIMARY, primary));
+            readOnly.initialize();
+            dataSource.setReadOnlyDataSource(readOnly);
+            dataSource.replica = replica;
+            registerReplicaLag(replica, environment, meterRegistry);
+            log.info("Read-only management transactions are routed to the replica {}", replica.getJdbcUrl());
+        }
+        return dataSource;
+    }
+
+    // Toutes les tâches @Scheduled utilisent le pool de maintenance, quel que soit le planificateur actif
+    // (pool de threads, ou threads virtuels si spring.threads.virtual.enabled)
+    @Bean
+    public ThreadPoolTaskSchedulerCustomizer maintenanceWorkloadThreadPoolScheduler() {
+        return scheduler -> scheduler.setTaskDecorator(Workload.MAINTENANCE::wrap);
+    }
+
+    @Bean
+    public SimpleAsyncTaskSchedulerCustomizer maintenanceWorkloadSimpleAsyncScheduler() {
+        return scheduler -> scheduler.setTaskDecorator(Workload.MAINTENANCE::wrap);
+    }
+
+    private static HikariDataSource createPool(Environment environment, String workload) {
+        String prefix = "yoxo.datasource." + workload + ".";
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("yoxo-" + workload);
+        config.setDriverClassName(environment.getRequiredProperty("spring.datasource.driver-class-name"));
+        config.setJdbcUrl(environment.getRequiredProperty("spring.datasource.url"));
+        config.setUsername(environment.getRequiredProperty("spring.datasource.username"));
+        config.setPassword(environment.getRequiredProperty("spring.datasource.password"));
+        config.setMaximumPoolSize(environment.getRequiredProperty(prefix + "maximum-pool-size", Integer.class));
+        config.setMinimumIdle(environment.getRequiredProperty(prefix + "minimum-idle", Integer.class));
+        config.setConnectionTimeout(environment.getRequiredProperty(prefix + "connection-timeout", Duration.class).toMillis());
+        return new HikariDataSource(config);
+    }
+
+    /**
+     * The replica pool is not a bean (it is optional): its metrics are bound here and it is closed with the
+     * routing DataSource.
+     */
+    private static HikariDataSource createReplicaPool(Environment environment, String url, MeterRegistry meterRegistry) {
+        String prefix = "yoxo.datasource.replica.";
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("yoxo-replica");
+        config.setDriverClassName(environment.getRequiredProperty("spring.datasource.driver-class-name"));
+        config.setJdbcUrl(url);
+        // Identifiants du primaire par défaut (réplica physique ou seconde base sur le même serveur)
+        config.setUsername(environment.getProperty(prefix + "username", environment.getRequiredProperty("spring.datasource.username")));
+        config.setPassword(environment.getProperty(prefix + "password", environment.getRequiredProperty("spring.datasource.password")));
+        config.setMaximumPoolSize(environment.getRequiredProperty(prefix + "maximum-pool-size", Integer.class));
+        config.setMinimumIdle(environment.getRequiredProperty(prefix + "minimum-idle", Integer.class));
+        config.setConnectionTimeout(environment.getRequiredProperty(prefix + "connection-timeout", Duration.class).toMillis());
+        config.setReadOnly(true);
+        config.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+        return new HikariDataSource(config);
+    }
+
+    /**
+     * Exposes the replication lag, in seconds, as yoxo.datasource.replica.lag.
+     * It is measured at most once per refresh interval, when the gauge is read. A server that is not in recovery
+     * (e.g. a second database used as replica locally) reports 0. On a physical replica of an idle primary,
+     * the lag grows until the next write is replayed.
+     */
+    private static void registerReplicaLag(HikariDataSource replica, Environment environment, MeterRegistry meterRegistry) {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(replica);
+        long refreshNanos = environment.getRequiredProperty("yoxo.datasource.replica.lag-refresh-interval", Duration.class).toNanos();
+        AtomicLong lastMeasure = new AtomicLong(System.nanoTime() - refreshNanos);
+        AtomicLong lagMillis = new AtomicLong();
+
+        Gauge.builder("yoxo.datasource.replica.lag", () -> {
+                    long now = System.nanoTime();
+                    long last = lastMeasure.get();
+                    if (now - last >= refreshNanos && lastMeasure.compareAndSet(last, now)) {
+                        try {
+                            Double lag = jdbcTemplate.queryForObject("""
+                                    SELECT CASE WHEN pg_is_in_recovery()
+                                                THEN COALESCE(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()), 0)
+                                                ELSE 0 END
+                                    """, Double.class);
+                            lagMillis.set(lag != null ? Math.round(lag * 1000) : 0);
+                        } catch (RuntimeException e) {
+                            log.warn("Unable to measure the replica lag: {}", e.toString());
+                        }
+                    }
+                    return lagMillis.get() / 1000.0;
+                })
+                .baseUnit("seconds")
+                .description("Replication lag of the read replica")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Routes each connection request to the pool of the current thread's workload, recording writes for the
+     * read-your-writes guard.
+     */
+    private static final class WorkloadRoutingDataSource extends AbstractRoutingDataSource {
+
+        private final ReadYourWritesGuard readYourWritesGuard;
+
+        private WorkloadRoutingDataSource(ReadYourWritesGuard readYourWritesGuard) {
+            this.readYourWritesGuard = readYourWritesGuard;
+        }
+
+        @Override
+        protected Object determineCurrentLookupKey() {
+            if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+                readYourWritesGuard.recordWrite();
+            }
+            return Workload.current();
+        }
+    }
+
+    /**
+     * Read-only connections: the replica for management reads, unless the user wrote recently.
+     * Protocol lookups (authorization codes, refresh tokens) always read the primary: they are read by the client
+     * right after being written for the user, which no per-principal guard can cover.
+     */
+    private static final class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+        private final ReadYourWritesGuard readYourWritesGuard;
+
+        private ReplicaRoutingDataSource(ReadYourWritesGuard readYourWritesGuard) {
+            this.readYourWritesGuard = readYourWritesGuard;
+        }
+
+        @Override
+        protected Object determineCurrentLookupKey() {
+            return Workload.current() == Workload.MANAGEMENT && readYourWritesGuard.mayReadFromReplica() ? REPLICA : PRIMARY;
+        }
+    }
+
+    /**
+     * Lazy connection proxy that closes the optional replica pool on shutdown.
+     */
+    private static final class ReplicaAwareDataSource extends LazyConnectionDataSourceProxy implements DisposableBean {
+
+        private HikariDataSource replica;
+
+        private ReplicaAwareDataSource(DataSource primary) {
+            super(primary);
+        }
+
+        @Override
+        public void destroy() {
+            if (replica != null) {
+                replica.close();
+            }
+        }
+    }
+}
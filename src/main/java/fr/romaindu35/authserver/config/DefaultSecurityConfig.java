@@ -7,6 +7,7 @@ import org.springframework.core.annotation.Order;
 import org.springframework.http.HttpMethod;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
+import org.springframework.security.config.annotation.web.configuration.WebSecurityCustomizer;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
@@ -20,21 +21,21 @@ public class DefaultSecurityConfig {
         return new BCryptPasswordEncoder();
     }
 
+    /**
+     * Fichiers publics (icônes, manifeste, images) servis sans passer par les chaînes de filtres Spring Security :
+     * ils ne dépendent d'aucune session ni d'aucun utilisateur, voir {@link StaticResourceConfig}.
+     */
+    @Bean
+    public WebSecurityCustomizer staticResourcesSecurityCustomizer() {
+        return web -> web.ignoring().requestMatchers(HttpMethod.GET, StaticResourceConfig.PUBLIC_RESOURCES);
+    }
+
     @Bean
     @Order(2)
     public SecurityFilterChain filterChain(HttpSecurity http) {
         http.authorizeHttpRequests(authorize -> {
                     authorize.requestMatchers(HttpMethod.GET, "/auth/callback/nationsglory").permitAll();
-                    authorize.requestMatchers(HttpMethod.GET, "/images/**").permitAll(); // Autorise l'accès aux images
                     authorize.requestMatchers(HttpMethod.GET, "/").permitAll();
-                    authorize.requestMatchers(HttpMethod.GET,
-                            "/android-chrome-192x192.png",
-                            "/android-chrome-512x512.png",
-                            "/apple-touch-icon.png",
-                            "/favicon-32x32.png",
-                            "/favicon-16x16.png",
-                            "/site.webmanifest",
-                            "/safari-pinned-tab.svg").permitAll();
                 }
         );
         http.formLogin(
@@ -0,0 +1,48 @@
+package fr.romaindu35.authserver.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.session.FlushMode;
+import org.springframework.session.SaveMode;
+import org.springframework.session.config.SessionRepositoryCustomizer;
+import org.springframework.session.jdbc.JdbcIndexedSessionRepository;
+import org.springframework.session.jdbc.PostgreSqlJdbcIndexedSessionRepositoryCustomizer;
+import org.springframework.session.jdbc.config.annotation.web.http.EnableJdbcHttpSession;
+
+import java.time.Duration;
+
+/**
+ * Optional shared HTTP session store in Postgres (yoxo.session.store=jdbc).
+ * Sessions then survive restarts and are visible to every node, so nodes no longer need sticky sessions
+ * and their heap no longer grows with the number of logged-in users.
+ * By default (yoxo.session.store=memory), sessions stay in Tomcat's memory.
+ *
+ * Only attributes set during the request are written (SaveMode.ON_SET_ATTRIBUTE), when the request completes
+ * (FlushMode.ON_SAVE): a request that only reads the security context just refreshes the access time.
+ * Expired sessions are deleted by a cron job of the repository.
+ */
+@Configuration
+@ConditionalOnProperty(name = "yoxo.session.store", havingValue = "jdbc")
+@EnableJdbcHttpSession
+public class HttpSessionConfig {
+
+    @Bean
+    public SessionRepositoryCustomizer<JdbcIndexedSessionRepository> jdbcSessionRepositoryCustomizer(
+            @Value("${yoxo.session.timeout}") Duration timeout,
+            @Value("${yoxo.session.cleanup-cron}") String cleanupCron) {
+        return repository -> {
+            repository.setDefaultMaxInactiveInterval(timeout);
+            repository.setFlushMode(FlushMode.ON_SAVE);
+            repository.setSaveMode(SaveMode.ON_SET_ATTRIBUTE);
+            repository.setCleanupCron(cleanupCron);
+        };
+    }
+
+    // Écrit les attributs avec INSERT ... ON CONFLICT plutôt que de retenter en UPDATE après une violation de clé
+    @Bean
+    public PostgreSqlJdbcIndexedSessionRepositoryCustomizer postgreSqlSessionRepositoryCustomizer() {
+        return new PostgreSqlJdbcIndexedSessionRepositoryCustomizer();
+    }
+}
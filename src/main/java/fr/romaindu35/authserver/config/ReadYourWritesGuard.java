@@ -0,0 +1,55 @@
+package fr.romaindu35.authserver.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Keeps the reads of a principal on the primary database for a short time after it wrote, so that a page reloaded
+ * right after a change (e.g. a revocation) never shows the replica's older state.
+ * Any read-write connection counts as a write; the window should exceed the usual replication lag.
+ */
+@Component
+public class ReadYourWritesGuard {
+
+    // principal -> présent tant que la fenêtre suivant sa dernière écriture n'est pas écoulée
+    private final Cache<String, Boolean> recentWriters;
+
+    public ReadYourWritesGuard(@Value("${yoxo.datasource.replica.read-your-writes-window}") Duration window,
+                               @Value("${yoxo.datasource.replica.max-tracked-principals}") long maxTrackedPrincipals) {
+        this.recentWriters = Caffeine.newBuilder()
+                .maximumSize(maxTrackedPrincipals)
+                .expireAfterWrite(window)
+                .build();
+    }
+
+    /**
+     * Records that the current principal is about to write.
+     */
+    public void recordWrite() {
+        String principal = currentPrincipal();
+        if (principal != null) {
+            recentWriters.put(principal, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * Checks whether the current principal may read from the replica.
+     *
+     * @return false if it wrote recently, or if there is no principal to track its writes
+     */
+    public boolean mayReadFromReplica() {
+        String principal = currentPrincipal();
+        return principal != null && recentWriters.getIfPresent(principal) == null;
+    }
+
+    private static String currentPrincipal() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication != null && authentication.isAuthenticated() ? authentication.getName() : null;
+    }
+}
@@ -0,0 +1,52 @@
+package fr.romaindu35.authserver.config;
+
+import fr.romaindu35.authserver.filter.ClientRateLimitFilter;
+import fr.romaindu35.authserver.filter.ConcurrencyLimitFilter;
+import fr.romaindu35.authserver.filter.WorkloadFilter;
+import fr.romaindu35.authserver.service.AdaptiveConcurrencyLimiter;
+import fr.romaindu35.authserver.service.ClientIpResolver;
+import fr.romaindu35.authserver.service.ClientRateLimiter;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Servlet filters placed in front of the Spring Security filter chains.
+ */
+@Configuration
+public class RequestFilterConfig {
+
+    // La chaîne Spring Security est enregistrée à l'ordre -100 : ces filtres passent avant.
+    // La limitation de débit précède la limite de concurrence : un appel refusé n'occupe pas de place
+    private static final int RATE_LIMIT_ORDER = -200;
+    private static final int CONCURRENCY_LIMIT_ORDER = -150;
+    private static final int WORKLOAD_ORDER = -140;
+
+    @Bean
+    public FilterRegistrationBean<ClientRateLimitFilter> clientRateLimitFilter(ClientRateLimiter rateLimiter,
+                                                                               ClientIpResolver clientIpResolver) {
+        FilterRegistrationBean<ClientRateLimitFilter> registration =
+                new FilterRegistrationBean<>(new ClientRateLimitFilter(rateLimiter, clientIpResolver));
+        registration.addUrlPatterns("/oauth2/token", "/oauth2/introspect", "/oauth2/revoke");
+        registration.setOrder(RATE_LIMIT_ORDER);
+        return registration;
+    }
+
+    @Bean
+    public FilterRegistrationBean<ConcurrencyLimitFilter> concurrencyLimitFilter(AdaptiveConcurrencyLimiter limiter) {
+        FilterRegistrationBean<ConcurrencyLimitFilter> registration =
+                new FilterRegistrationBean<>(new ConcurrencyLimitFilter(limiter));
+        // Endpoints de la chaîne du serveur d'autorisation et appels Hilla (/connect/*)
+        registration.addUrlPatterns("/oauth2/*", "/userinfo", "/connect/*", "/.well-known/*");
+        registration.setOrder(CONCURRENCY_LIMIT_ORDER);
+        return registration;
+    }
+
+    @Bean
+    public FilterRegistrationBean<WorkloadFilter> workloadFilter() {
+        FilterRegistrationBean<WorkloadFilter> registration = new FilterRegistrationBean<>(new WorkloadFilter());
+        registration.addUrlPatterns("/connect/*");
+        registration.setOrder(WORKLOAD_ORDER);
+        return registration;
+    }
+}
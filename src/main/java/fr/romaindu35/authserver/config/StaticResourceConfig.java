@@ -0,0 +1,43 @@
+package fr.romaindu35.authserver.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.http.CacheControl;
+import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.time.Duration;
+
+/**
+ * Public files of META-INF/resources (icons, web manifest, images), served directly by Spring MVC with cache headers.
+ * Their URLs are fixed (referenced by browsers, the manifest and other sites), so they are cached for a bounded time
+ * and revalidated with Last-Modified afterwards.
+ * Images used by the React views are imported through Vite instead: they are fingerprinted into the frontend bundle,
+ * which Vaadin serves with long-lived caching and precompressed variants.
+ */
+@Configuration
+public class StaticResourceConfig implements WebMvcConfigurer {
+
+    static final String[] PUBLIC_RESOURCES = {
+            "/images/**",
+            "/android-chrome-192x192.png",
+            "/android-chrome-512x512.png",
+            "/apple-touch-icon.png",
+            "/favicon-32x32.png",
+            "/favicon-16x16.png",
+            "/site.webmanifest",
+            "/safari-pinned-tab.svg"
+    };
+
+    private static final Duration PUBLIC_RESOURCES_MAX_AGE = Duration.ofDays(7);
+
+    @Override
+    public void addResourceHandlers(ResourceHandlerRegistry registry) {
+        // Avant le routage de Vaadin, qui renverrait sinon l'index de l'application
+        registry.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        registry.addResourceHandler(PUBLIC_RESOURCES)
+                .addResourceLocations("classpath:/META-INF/resources/")
+                .setCacheControl(CacheControl.maxAge(PUBLIC_RESOURCES_MAX_AGE).cachePublic())
+                .resourceChain(true);
+    }
+}
@@ -0,0 +1,65 @@
+package fr.romaindu35.authserver.config;
+
+/**
+ * Workload a thread is working for, used to pick its database connection pool.
+ * Each workload has its own pool, so a slow dashboard query or a long maintenance job cannot take the connections
+ * needed to issue tokens.
+ * Request threads are not split per workload: HTTP workloads share the Tomcat executor (or virtual threads), and
+ * the adaptive concurrency limit caps the share of requests the management UI can hold. Scheduled jobs already
+ * run on the scheduler's own threads.
+ */
+public enum Workload {
+
+    /**
+     * OAuth2 protocol endpoints, login and consent pages, and any thread not assigned to another workload.
+     */
+    PROTOCOL,
+    /**
+     * Hilla endpoints of the management UI (authorization dashboard, client management).
+     */
+    MANAGEMENT,
+    /**
+     * Scheduled jobs: purges, reconciliation, compaction, geolocation.
+     */
+    MAINTENANCE;
+
+    private static final ThreadLocal<Workload> CURRENT = new ThreadLocal<>();
+
+    public static Workload current() {
+        Workload workload = CURRENT.get();
+        return workload != null ? workload : PROTOCOL;
+    }
+
+    /**
+     * Assigns the current thread to this workload.
+     *
+     * @return the previous assignment, to pass to {@link #restore(Workload)}
+     */
+    public Workload enter() {
+        Workload previous = CURRENT.get();
+        CURRENT.set(this);
+        return previous;
+    }
+
+    public static void restore(Workload previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+
+    /**
+     * Wraps a task so that it runs as this workload.
+     */
+    public Runnable wrap(Runnable task) {
+        return () -> {
+            Workload previous = enter();
+            try {
+                task.run();
+            } finally {
+                restore(previous);
+            }
+        };
+    }
+}
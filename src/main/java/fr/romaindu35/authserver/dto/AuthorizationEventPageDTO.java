@@ -0,0 +1,23 @@
+package fr.romaindu35.authserver.dto;
+
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+
+import java.util.List;
+
+/**
+ * DTO représentant une page de la chronologie des événements d'autorisation d'un client.
+ * Les pages sont lues de la plus récente à la plus ancienne et chaînées par un curseur opaque.
+ */
+public record AuthorizationEventPageDTO(
+        /**
+         * Événements de la page, du plus récent au plus ancien.
+         */
+        @Nonnull List<AuthorizationEventDTO> events,
+
+        /**
+         * Curseur à renvoyer pour obtenir la page suivante (null s'il s'agit de la dernière page).
+         */
+        @Nullable String nextCursor
+) {
+}
@@ -0,0 +1,23 @@
+package fr.romaindu35.authserver.dto;
+
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+
+import java.util.List;
+
+/**
+ * DTO representing one page of authorizations displayed on the /connections page.
+ * Pages are chained with an opaque keyset cursor instead of an offset.
+ */
+public record AuthorizationPageDTO(
+        /**
+         * Authorizations of this page, in display order
+         */
+        @Nonnull List<AuthorizationWithClientDTO> items,
+
+        /**
+         * Cursor to pass back to fetch the next page (null if this is the last page)
+         */
+        @Nullable String nextCursor
+) {
+}
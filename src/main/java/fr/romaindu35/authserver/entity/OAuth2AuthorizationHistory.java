@@ -16,6 +16,9 @@ import java.util.UUID;
  *
  * When scopes are added to an existing authorization, the old entry is marked as inactive
  * (is_active=false) without setting revoked_at, and a new entry is created.
+ *
+ * Old superseded entries may later be compacted (compacted=true): their request metadata is cleared
+ * and must be read from the nearest newer entry that is not compacted.
  */
 @Entity
 @Table(name = "oauth2_authorization_history")
@@ -42,21 +45,13 @@ public class OAuth2AuthorizationHistory {
     private Set<String> authorizedScopes;
 
     // Request metadata
-    @Column(name = "ip_address", nullable = false)
+    @Column(name = "ip_address")
     @JdbcTypeCode(SqlTypes.INET)
     private InetAddress ipAddress;
 
-    @Column(name = "user_agent")
-    private String userAgent;
-
-    @Column(name = "browser", length = 100)
-    private String browser;
-
-    @Column(name = "device_type", length = 50)
-    private String deviceType;
-
-    @Column(name = "os", length = 100)
-    private String os;
+    // User-Agent, browser, device type and OS are stored once in user_agent_dictionary
+    @Column(name = "user_agent_id")
+    private Integer userAgentId;
 
     // Geolocation
     @Column(name = "country", length = 100)
@@ -65,6 +60,10 @@ public class OAuth2AuthorizationHistory {
     @Column(name = "city", length = 100)
     private String city;
 
+    // Build date of the GeoIP database that resolved country/city, null while resolution is pending
+    @Column(name = "geo_database_build")
+    private Instant geoDatabaseBuild;
+
     // Lifecycle tracking
     @Column(name = "granted_at", nullable = false)
     private Instant grantedAt;
@@ -75,6 +74,10 @@ public class OAuth2AuthorizationHistory {
     @Column(name = "is_active", nullable = false)
     private boolean isActive;
 
+    // Metadata inherited from the nearest newer non-compacted entry
+    @Column(name = "compacted", nullable = false)
+    private boolean compacted;
+
     // Link to the technical Spring Authorization ID
     @Column(name = "authorization_id", length = 100)
     private String authorizationId;
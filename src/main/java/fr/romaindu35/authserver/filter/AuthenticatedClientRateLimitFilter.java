@@ -0,0 +1,40 @@
+package fr.romaindu35.authserver.filter;
+
+import fr.romaindu35.authserver.service.ClientRateLimiter;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.server.authorization.authentication.OAuth2ClientAuthenticationToken;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Applies the client-wide rate limit of confidential clients, once the client has authenticated.
+ * Placed in the authorization server filter chain, after client authentication and before the endpoints:
+ * only calls proven to come from the client consume its quota.
+ */
+@RequiredArgsConstructor
+public class AuthenticatedClientRateLimitFilter extends OncePerRequestFilter {
+
+    private final ClientRateLimiter rateLimiter;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication instanceof OAuth2ClientAuthenticationToken client
+                && client.isAuthenticated() && client.getRegisteredClient() != null) {
+            long waitNanos = rateLimiter.tryAcquireAuthenticated(client.getRegisteredClient().getClientId());
+            if (waitNanos > 0) {
+                ClientRateLimitFilter.reject(response, waitNanos);
+                return;
+            }
+        }
+        filterChain.doFilter(request, response);
+    }
+}
@@ -0,0 +1,91 @@
+package fr.romaindu35.authserver.filter;
+
+import fr.romaindu35.authserver.service.ClientIpResolver;
+import fr.romaindu35.authserver.service.ClientRateLimiter;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rate limits the client-authenticated OAuth2 endpoints (token, introspection, revocation) before Spring Security
+ * authenticates the client, so a rejected call costs neither a client lookup nor a secret check.
+ * Calls are charged per (client_id, IP); the client-wide limit of confidential clients is applied after their
+ * authentication by {@link AuthenticatedClientRateLimitFilter}.
+ * Rejected calls get a 429 with a Retry-After header.
+ */
+@RequiredArgsConstructor
+public class ClientRateLimitFilter extends OncePerRequestFilter {
+
+    private static final String BASIC_PREFIX = "Basic ";
+
+    private final ClientRateLimiter rateLimiter;
+    private final ClientIpResolver clientIpResolver;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        String ipAddress = clientIpResolver.resolve(request).getHostAddress();
+        long waitNanos = rateLimiter.tryAcquire(extractClientId(request), ipAddress);
+        if (waitNanos == 0) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        reject(response, waitNanos);
+    }
+
+    /**
+     * Writes a 429 response.
+     *
+     * @param waitNanos the delay before a retry can be admitted
+     */
+    static void reject(HttpServletResponse response, long waitNanos) throws IOException {
+        long retryAfterSeconds = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + 999_999_999L));
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.getWriter().write("{\"error\":\"too_many_requests\",\"error_description\":\"Rate limit exceeded\"}");
+    }
+
+    /**
+     * Reads the client_id of the request without authenticating it: from the client_id parameter
+     * (client_secret_post, public clients) or from HTTP Basic credentials (client_secret_basic), in the order of
+     * the authentication converters of AuthorizationServerConfig.
+     *
+     * @return the client_id, or null if the request does not name one (e.g. client assertion without client_id)
+     */
+    private static String extractClientId(HttpServletRequest request) {
+        String clientId = request.getParameter("client_id");
+        if (clientId != null && !clientId.isEmpty()) {
+            return clientId;
+        }
+        String authorization = request.getHeader(HttpHeaders.AUTHORIZATION);
+        if (authorization != null && authorization.regionMatches(true, 0, BASIC_PREFIX, 0, BASIC_PREFIX.length())) {
+            try {
+                String credentials = new String(
+                        Base64.getDecoder().decode(authorization.substring(BASIC_PREFIX.length()).trim()),
+                        StandardCharsets.UTF_8);
+                int colon = credentials.indexOf(':');
+                if (colon > 0) {
+                    // RFC 6749 §2.3.1 : identifiant encodé en application/x-www-form-urlencoded
+                    return URLDecoder.decode(credentials.substring(0, colon), StandardCharsets.UTF_8);
+                }
+            } catch (IllegalArgumentException e) {
+                // En-tête invalide : Spring Security le rejettera, on limite par IP
+                return null;
+            }
+        }
+        return null;
+    }
+}
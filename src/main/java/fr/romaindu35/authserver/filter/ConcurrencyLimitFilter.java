@@ -0,0 +1,54 @@
+package fr.romaindu35.authserver.filter;
+
+import fr.romaindu35.authserver.service.AdaptiveConcurrencyLimiter;
+import fr.romaindu35.authserver.service.AdaptiveConcurrencyLimiter.Priority;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Sheds load on the authorization server and Hilla endpoints when the adaptive concurrency limit is reached:
+ * excess requests get an immediate 503 with Retry-After instead of waiting for a Tomcat thread or a connection.
+ */
+@RequiredArgsConstructor
+public class ConcurrencyLimitFilter extends OncePerRequestFilter {
+
+    private final AdaptiveConcurrencyLimiter limiter;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        Priority priority = priorityOf(request);
+        if (!limiter.tryAcquire(priority)) {
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            response.getWriter().write("{\"error\":\"temporarily_unavailable\",\"error_description\":\"Server overloaded\"}");
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            limiter.release(priority, System.nanoTime() - start);
+        }
+    }
+
+    private static Priority priorityOf(HttpServletRequest request) {
+        String path = EndpointPaths.pathOf(request);
+        if (EndpointPaths.isTokenEndpoint(path)) {
+            return Priority.HIGH;
+        }
+        // Les appels Hilla de connexion et de consentement font partie d'une autorisation en cours
+        return EndpointPaths.isManagementCall(path) ? Priority.LOW : Priority.NORMAL;
+    }
+}
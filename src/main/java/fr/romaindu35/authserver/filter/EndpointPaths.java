@@ -0,0 +1,48 @@
+package fr.romaindu35.authserver.filter;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Classification of request paths shared by the request filters.
+ */
+final class EndpointPaths {
+
+    private static final String HILLA_PREFIX = "/connect/";
+
+    /**
+     * Hilla endpoints of the management UI. The others (login, consent page, current user) are on the path of an
+     * authorization and are treated like the protocol endpoints.
+     */
+    private static final Set<String> MANAGEMENT_ENDPOINTS = Set.of(
+            "clientmanagementcontroller",
+            "authorizationmanagementcontroller"
+    );
+
+    private EndpointPaths() {
+    }
+
+    static String pathOf(HttpServletRequest request) {
+        return request.getRequestURI().substring(request.getContextPath().length());
+    }
+
+    static boolean isTokenEndpoint(String path) {
+        return path.equals("/oauth2/token");
+    }
+
+    /**
+     * Hilla calls are /connect/{endpoint}/{method}, like the OIDC logout and client registration endpoints
+     * (/connect/logout, /connect/register), which are not management endpoints.
+     * Endpoint names are matched case-insensitively, like Hilla does.
+     */
+    static boolean isManagementCall(String path) {
+        if (!path.startsWith(HILLA_PREFIX)) {
+            return false;
+        }
+        int end = path.indexOf('/', HILLA_PREFIX.length());
+        String endpoint = end < 0 ? path.substring(HILLA_PREFIX.length()) : path.substring(HILLA_PREFIX.length(), end);
+        return MANAGEMENT_ENDPOINTS.contains(endpoint.toLowerCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,34 @@
+package fr.romaindu35.authserver.filter;
+
+import fr.romaindu35.authserver.config.Workload;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Runs the Hilla calls of the management UI as the {@link Workload#MANAGEMENT} workload, so their queries use the
+ * management pool. Login, consent and current-user calls stay on the protocol pool: they are part of an
+ * authorization in progress.
+ */
+public class WorkloadFilter extends OncePerRequestFilter {
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !EndpointPaths.isManagementCall(EndpointPaths.pathOf(request));
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        Workload previous = Workload.MANAGEMENT.enter();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            Workload.restore(previous);
+        }
+    }
+}
@@ -2,10 +2,12 @@ package fr.romaindu35.authserver.repository;
 
 import fr.romaindu35.authserver.entity.OAuth2AuthorizationHistory;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -19,65 +21,104 @@ public interface OAuth2AuthorizationHistoryRepository extends JpaRepository<OAut
 
     /**
      * Finds the currently active authorization for a specific user and client combination.
-     * There should be at most one active authorization per user-client pair.
+     * There should be at most one active authorization per user-client pair; if a race ever left several,
+     * the most recent one is returned instead of failing, and {@link #archiveActive} archives the others.
+     * The literal is_active = true predicate lets the planner use the partial index idx_authorization_history_active_pair.
      *
      * @param userId the user's UUID
      * @param clientId the OAuth2 client ID
      * @return Optional containing the active authorization if found
      */
-    Optional<OAuth2AuthorizationHistory> findByUserIdAndClientIdAndIsActiveTrue(UUID userId, UUID clientId);
+    @Query(value = """
+        SELECT * FROM oauth2_authorization_history
+        WHERE user_id = :userId AND client_id = :clientId AND is_active = true
+        ORDER BY granted_at DESC
+        LIMIT 1
+        """, nativeQuery = true)
+    Optional<OAuth2AuthorizationHistory> findByUserIdAndClientIdAndIsActiveTrue(@Param("userId") UUID userId, @Param("clientId") UUID clientId);
 
     /**
-     * Finds all authorization history entries for a specific user and client,
-     * ordered by grant time (less recent first).
-     * Includes both active and inactive/revoked authorizations.
+     * Archives every active authorization of a specific user and client (superseded, not revoked).
+     * Set-based, so duplicate active rows left by an earlier race are archived too; reads the partial index
+     * idx_authorization_history_active_pair.
      *
      * @param userId the user's UUID
      * @param clientId the OAuth2 client ID
-     * @return List of authorization history entries, ordered by granted_at ASC
+     * @return the number of archived entries
      */
-    List<OAuth2AuthorizationHistory> findByUserIdAndClientIdOrderByGrantedAtAsc(UUID userId, UUID clientId);
+    @Modifying(flushAutomatically = true)
+    @Query(value = """
+        UPDATE oauth2_authorization_history
+        SET is_active = false
+        WHERE user_id = :userId AND client_id = :clientId AND is_active = true
+        """, nativeQuery = true)
+    int archiveActive(@Param("userId") UUID userId, @Param("clientId") UUID clientId);
 
     /**
-     * Finds all active authorizations for a specific user.
-     * Uses native SQL query for optimal performance.
+     * Finds the most recent authorization history entries for a specific user and client.
+     * First page of the event timeline, read through idx_authorization_history_timeline.
      *
      * @param userId the user's UUID
-     * @return List of active authorization history entries, ordered by granted_at DESC
+     * @param clientId the OAuth2 client ID
+     * @param limit maximum number of entries to return
+     * @return List of authorization history entries, ordered by granted_at DESC, id DESC
      */
-    @Query(value = "SELECT * FROM oauth2_authorization_history WHERE user_id = :userId AND is_active = true ORDER BY granted_at DESC", nativeQuery = true)
-    List<OAuth2AuthorizationHistory> findActiveAuthorizationsByUserId(@Param("userId") UUID userId);
+    @Query(value = """
+        SELECT * FROM oauth2_authorization_history
+        WHERE user_id = :userId AND client_id = :clientId
+        ORDER BY granted_at DESC, id DESC
+        LIMIT :limit
+        """, nativeQuery = true)
+    List<OAuth2AuthorizationHistory> findTimelineHead(@Param("userId") UUID userId,
+                                                      @Param("clientId") UUID clientId,
+                                                      @Param("limit") int limit);
 
     /**
-     * Finds the most recent inactive authorization for each client where the user has NO active authorization.
-     * Uses a CTE to identify (user_id, client_id) pairs without any active authorization,
-     * then retrieves the most recent inactive authorization for each such pair.
-     *
-     * Performance optimized: filters at database level instead of application level.
+     * Finds the authorization history entries strictly older than a keyset position, for a specific user and client.
+     * Following pages of the event timeline, read through idx_authorization_history_timeline.
      *
      * @param userId the user's UUID
-     * @return List of most recent inactive authorizations (one per client), ordered by revoked_at DESC
+     * @param clientId the OAuth2 client ID
+     * @param grantedAt granted_at of the last entry of the previous page
+     * @param id id of the last entry of the previous page
+     * @param limit maximum number of entries to return
+     * @return List of authorization history entries, ordered by granted_at DESC, id DESC
      */
     @Query(value = """
-        WITH inactive_pairs AS (
-            SELECT DISTINCT user_id, client_id
-            FROM oauth2_authorization_history
-            WHERE is_active = false
-
-            EXCEPT
+        SELECT * FROM oauth2_authorization_history
+        WHERE user_id = :userId AND client_id = :clientId
+          AND (granted_at, id) < (:grantedAt, :id)
+        ORDER BY granted_at DESC, id DESC
+        LIMIT :limit
+        """, nativeQuery = true)
+    List<OAuth2AuthorizationHistory> findTimelinePageBefore(@Param("userId") UUID userId,
+                                                            @Param("clientId") UUID clientId,
+                                                            @Param("grantedAt") Instant grantedAt,
+                                                            @Param("id") UUID id,
+                                                            @Param("limit") int limit);
 
-            SELECT DISTINCT user_id, client_id
-            FROM oauth2_authorization_history
-            WHERE is_active = true
-        )
-        SELECT DISTINCT ON (h.user_id, h.client_id) h.*
-        FROM oauth2_authorization_history h, inactive_pairs ip
-        WHERE h.user_id = ip.user_id
-          AND h.client_id = ip.client_id
-          AND h.user_id = :userId
-        ORDER BY h.user_id, h.client_id, h.revoked_at DESC NULLS LAST
+    /**
+     * Finds the nearest entry newer than a keyset position that is not compacted, for a specific user and client.
+     * A compacted entry inherits its request metadata (IP, user agent, geolocation) from this entry.
+     *
+     * @param userId the user's UUID
+     * @param clientId the OAuth2 client ID
+     * @param grantedAt granted_at of the compacted entry
+     * @param id id of the compacted entry
+     * @return Optional containing the entry holding the metadata
+     */
+    @Query(value = """
+        SELECT * FROM oauth2_authorization_history
+        WHERE user_id = :userId AND client_id = :clientId
+          AND (granted_at, id) > (:grantedAt, :id)
+          AND compacted = false
+        ORDER BY granted_at ASC, id ASC
+        LIMIT 1
         """, nativeQuery = true)
-    List<OAuth2AuthorizationHistory> findInactiveAuthorizationsWithoutActiveByUserId(@Param("userId") UUID userId);
+    Optional<OAuth2AuthorizationHistory> findMetadataSource(@Param("userId") UUID userId,
+                                                            @Param("clientId") UUID clientId,
+                                                            @Param("grantedAt") Instant grantedAt,
+                                                            @Param("id") UUID id);
 
     Optional<OAuth2AuthorizationHistory> findByAuthorizationId(String authorizationId);
 }
@@ -0,0 +1,184 @@
+package fr.romaindu35.authserver.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Adaptive limit on the number of concurrent requests to the authorization server and Hilla endpoints
+ * (gradient style, after Netflix's Gradient2).
+ * Completed requests feed two moving averages of the latency of their priority: a short one (the last few requests)
+ * and a long one (the usual latency). When the short average of a priority rises above tolerance x its long one,
+ * requests are queueing somewhere (Tomcat, Hikari, Postgres) and the limit shrinks in proportion; while latency is
+ * normal and the limit is actually used, it grows by about its square root per sample, smoothed. Requests above the
+ * limit are rejected at once instead of queueing.
+ * Each priority is compared with its own usual latency: management calls, slower by nature, do not pass for queueing
+ * of the token endpoint, and a burst of them does not shift its baseline. The usual latency is not updated while
+ * requests are queueing, so that a sustained overload keeps the limit down instead of becoming the new baseline.
+ *
+ * Lower priorities may only use part of the limit, so under overload Hilla management calls are shed first and
+ * token requests (including refreshes) last.
+ * Admission and release are lock-free.
+ */
+@Service
+public class AdaptiveConcurrencyLimiter {
+
+    public enum Priority {
+        /**
+         * Token endpoint: logins and refreshes.
+         */
+        HIGH,
+        /**
+         * Other authorization server endpoints, and the Hilla calls of the login and consent pages.
+         */
+        NORMAL,
+        /**
+         * Hilla endpoint calls of the management UI (dashboard, client management).
+         */
+        LOW
+    }
+
+    private static final double SHORT_WINDOW = 10;
+    // La limite ne peut pas être plus que divisée par deux sur un échantillon
+    private static final double MIN_GRADIENT = 0.5;
+
+    private final boolean enabled;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final double smoothing;
+    private final double longWindow;
+    private final Map<Priority, Double> shares = new EnumMap<>(Priority.class);
+
+    // Valeurs double stockées en bits pour les mises à jour atomiques
+    private final AtomicLong limitBits;
+    private final Map<Priority, Latency> latencies = new EnumMap<>(Priority.class);
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final Map<Priority, Counter> shedCounters = new EnumMap<>(Priority.class);
+
+    public AdaptiveConcurrencyLimiter(MeterRegistry meterRegistry,
+                                      @Value("${yoxo.concurrency.enabled}") boolean enabled,
+                                      @Value("${yoxo.concurrency.initial-limit}") int initialLimit,
+                                      @Value("${yoxo.concurrency.min-limit}") int minLimit,
+                                      @Value("${yoxo.concurrency.max-limit}") int maxLimit,
+                                      @Value("${yoxo.concurrency.latency-tolerance}") double tolerance,
+                                      @Value("${yoxo.concurrency.smoothing}") double smoothing,
+                                      @Value("${yoxo.concurrency.long-window}") int longWindow,
+                                      @Value("${yoxo.concurrency.normal-share}") double normalShare,
+                                      @Value("${yoxo.concurrency.low-share}") double lowShare) {
+        this.enabled = enabled;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+        this.smoothing = smoothing;
+        this.longWindow = longWindow;
+        this.shares.put(Priority.HIGH, 1.0);
+        this.shares.put(Priority.NORMAL, normalShare);
+        this.shares.put(Priority.LOW, lowShare);
+        this.limitBits = new AtomicLong(Double.doubleToLongBits(Math.clamp(initialLimit, minLimit, maxLimit)));
+
+        Gauge.builder("yoxo.concurrency.limit", this, AdaptiveConcurrencyLimiter::getLimit).register(meterRegistry);
+        Gauge.builder("yoxo.concurrency.in-flight", inFlight, AtomicInteger::get).register(meterRegistry);
+        for (Priority priority : Priority.values()) {
+            latencies.put(priority, new Latency());
+            shedCounters.put(priority, meterRegistry.counter("yoxo.concurrency.shed", "priority", priority.name()));
+        }
+    }
+
+    /**
+     * Tries to admit a request.
+     *
+     * @param priority the priority of the request
+     * @return true if admitted: {@link #release(Priority, long)} must then be called once the request completes
+     */
+    public boolean tryAcquire(Priority priority) {
+        if (!enabled) {
+            return true;
+        }
+        int allowed = Math.max(1, (int) (getLimit() * shares.get(priority)));
+        while (true) {
+            int current = inFlight.get();
+            if (current >= allowed) {
+                shedCounters.get(priority).increment();
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Releases an admitted request and feeds its latency to the limit.
+     *
+     * @param priority     the priority the request was admitted with
+     * @param latencyNanos the time the request took
+     */
+    public void release(Priority priority, long latencyNanos) {
+        if (!enabled) {
+            return;
+        }
+        int inFlightBefore = inFlight.getAndDecrement();
+        Latency latency = latencies.get(priority);
+        double shortLatency = average(latency.shortBits, latencyNanos, SHORT_WINDOW);
+        double longLatency = Double.longBitsToDouble(latency.longBits.get());
+        // Tant que des requêtes attendent, la latence habituelle n'absorbe pas le temps d'attente : sinon elle finirait
+        // par le rattraper et la limite repartirait à la hausse. À la limite minimale, elle se recale sur la latence
+        // observée, qui n'est plus due à une file d'attente (service durablement plus lent).
+        if (longLatency == 0 || shortLatency <= tolerance * longLatency || getLimit() <= minLimit) {
+            longLatency = average(latency.longBits, latencyNanos, longWindow);
+        }
+        if (shortLatency <= 0) {
+            return;
+        }
+
+        while (true) {
+            long bits = limitBits.get();
+            double limit = Double.longBitsToDouble(bits);
+            double gradient = Math.clamp(tolerance * longLatency / shortLatency, MIN_GRADIENT, 1.0);
+            double target = limit * gradient + Math.sqrt(limit);
+            double newLimit = Math.clamp(limit * (1 - smoothing) + target * smoothing, minLimit, maxLimit);
+            if (newLimit > limit && inFlightBefore < limit / 2) {
+                // Limite peu utilisée : une latence normale ne prouve pas qu'une limite plus haute serait tenue
+                return;
+            }
+            if (newLimit == limit || limitBits.compareAndSet(bits, Double.doubleToLongBits(newLimit))) {
+                return;
+            }
+        }
+    }
+
+    public double getLimit() {
+        return Double.longBitsToDouble(limitBits.get());
+    }
+
+    /**
+     * Adds a sample to an exponential moving average over about {@code window} samples.
+     * The first sample initializes the average.
+     *
+     * @return the updated average
+     */
+    private static double average(AtomicLong averageBits, long sample, double window) {
+        double alpha = 2 / (window + 1);
+        return Double.longBitsToDouble(averageBits.updateAndGet(bits -> {
+            double average = Double.longBitsToDouble(bits);
+            return Double.doubleToLongBits(average == 0 ? sample : average + alpha * (sample - average));
+        }));
+    }
+
+    /**
+     * Short and long latency averages of one priority, as double bits.
+     */
+    private static final class Latency {
+        private final AtomicLong shortBits = new AtomicLong(Double.doubleToLongBits(0));
+        private final AtomicLong longBits = new AtomicLong(Double.doubleToLongBits(0));
+    }
+}
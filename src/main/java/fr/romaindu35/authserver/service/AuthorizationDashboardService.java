@@ -0,0 +1,179 @@
+package fr.romaindu35.authserver.service;
+
+import fr.romaindu35.authserver.dto.AuthorizationPageDTO;
+import fr.romaindu35.authserver.dto.AuthorizationWithClientDTO;
+import fr.romaindu35.authserver.utils.KeysetCursor;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Service de lecture des autorisations affichées sur la page /connections.
+ * Chaque page est chargée en une seule requête qui joint l'historique, le nom du client
+ * et le compteur de sessions actives (table session_counter), avec une pagination par clé (keyset).
+ * Le navigateur, l'appareil et l'OS sont résolus depuis le cache du dictionnaire des User-Agents.
+ */
+@Service
+@RequiredArgsConstructor
+public class AuthorizationDashboardService {
+
+    /**
+     * Nombre d'autorisations renvoyées par page.
+     */
+    public static final int PAGE_SIZE = 50;
+
+    private static final String SELECT_COLUMNS = """
+            SELECT h.id, h.client_id, c.client_name, h.authorized_scopes, host(h.ip_address) AS ip_address,
+                   h.user_agent_id, h.country, h.city, h.granted_at, h.revoked_at, h.is_active,
+                   COALESCE(sc.active_count, 0) AS active_token_count, h.sort_key
+            """;
+
+    // Parcours de idx_authorization_history_user_client_active (user_id, granted_at DESC) WHERE is_active
+    static final String ACTIVE_SQL = """
+            WITH page_rows AS (
+                SELECT h.*, h.granted_at AS sort_key
+                FROM oauth2_authorization_history h
+                WHERE h.user_id = ?
+                  AND h.is_active = true
+            )
+            """ + SELECT_COLUMNS + """
+            FROM page_rows h
+            LEFT JOIN oauth2_client c ON c.id = h.client_id
+            LEFT JOIN session_counter sc ON sc.principal_name = ? AND sc.client_id = h.client_id
+            WHERE (h.sort_key, h.id) < (?, ?)
+            ORDER BY h.sort_key DESC, h.id DESC
+            LIMIT ?
+            """;
+
+    // Dernière autorisation inactive de chaque client pour lequel l'utilisateur n'a plus d'autorisation active.
+    // Tout est restreint à user_id avant l'anti-jointure : le DISTINCT ON parcourt idx_authorization_history_inactive_pair
+    // et le NOT EXISTS sonde idx_authorization_history_active_pair, le coût ne dépend donc que de l'historique de l'utilisateur.
+    static final String INACTIVE_SQL = """
+            WITH latest_inactive AS (
+                SELECT DISTINCT ON (h.client_id) h.*
+                FROM oauth2_authorization_history h
+                WHERE h.user_id = ?
+                  AND h.is_active = false
+                  AND h.compacted = false
+                  AND NOT EXISTS (
+                      SELECT 1
+                      FROM oauth2_authorization_history a
+                      WHERE a.user_id = h.user_id
+                        AND a.client_id = h.client_id
+                        AND a.is_active = true
+                  )
+                ORDER BY h.client_id, h.revoked_at DESC NULLS LAST
+            ), page_rows AS (
+                SELECT h.*, COALESCE(h.revoked_at, h.granted_at) AS sort_key
+                FROM latest_inactive h
+            )
+            """ + SELECT_COLUMNS + """
+            FROM page_rows h
+            LEFT JOIN oauth2_client c ON c.id = h.client_id
+            LEFT JOIN session_counter sc ON sc.principal_name = ? AND sc.client_id = h.client_id
+            WHERE (h.sort_key, h.id) < (?, ?)
+            ORDER BY h.sort_key DESC, h.id DESC
+            LIMIT ?
+            """;
+
+    // Curseur initial : strictement supérieur à toute clé réelle
+    private static final Timestamp MAX_SORT_KEY = Timestamp.valueOf("9999-12-31 00:00:00");
+    private static final UUID MAX_ID = new UUID(-1L, -1L);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final UserAgentDictionary userAgentDictionary;
+
+    /**
+     * Récupère une page des autorisations actives d'un utilisateur, triées par grantedAt DESC.
+     *
+     * @param userId   UUID de l'utilisateur
+     * @param username Nom d'utilisateur (principal_name des tokens)
+     * @param cursor   Curseur renvoyé par la page précédente, null pour la première page
+     * @return La page d'autorisations et le curseur de la page suivante
+     */
+    @Transactional(readOnly = true)
+    public AuthorizationPageDTO getActiveAuthorizations(UUID userId, String username, String cursor) {
+        return fetchPage(ACTIVE_SQL, userId, username, cursor);
+    }
+
+    /**
+     * Récupère une page des autorisations inactives d'un utilisateur (une par client, la plus récente),
+     * en excluant les clients qui ont encore une autorisation active. Triées par revokedAt DESC.
+     *
+     * @param userId   UUID de l'utilisateur
+     * @param username Nom d'utilisateur (principal_name des tokens)
+     * @param cursor   Curseur renvoyé par la page précédente, null pour la première page
+     * @return La page d'autorisations et le curseur de la page suivante
+     */
+    @Transactional(readOnly = true)
+    public AuthorizationPageDTO getInactiveAuthorizations(UUID userId, String username, String cursor) {
+        return fetchPage(INACTIVE_SQL, userId, username, cursor);
+    }
+
+    private AuthorizationPageDTO fetchPage(String sql, UUID userId, String username, String cursor) {
+        Timestamp afterSortKey = MAX_SORT_KEY;
+        UUID afterId = MAX_ID;
+        if (cursor != null && !cursor.isBlank()) {
+            KeysetCursor decoded = KeysetCursor.decode(cursor);
+            afterSortKey = Timestamp.from(decoded.sortKey());
+            afterId = decoded.id();
+        }
+
+        // On demande une ligne de plus que la taille de page pour savoir s'il existe une page suivante
+        List<PageRow> rows = jdbcTemplate.query(sql, this::mapPageRow,
+                userId, username, afterSortKey, afterId, PAGE_SIZE + 1);
+
+        boolean hasNext = rows.size() > PAGE_SIZE;
+        List<PageRow> pageRows = hasNext ? rows.subList(0, PAGE_SIZE) : rows;
+
+        List<AuthorizationWithClientDTO> items = new ArrayList<>(pageRows.size());
+        for (PageRow row : pageRows) {
+            items.add(row.authorization());
+        }
+
+        String nextCursor = null;
+        if (hasNext) {
+            PageRow last = pageRows.getLast();
+            nextCursor = new KeysetCursor(last.sortKey().toInstant(), last.authorization().id()).encode();
+        }
+        return new AuthorizationPageDTO(items, nextCursor);
+    }
+
+    private PageRow mapPageRow(ResultSet rs, int rowNum) throws SQLException {
+        String clientName = rs.getString("client_name");
+        String[] scopes = (String[]) rs.getArray("authorized_scopes").getArray();
+        Timestamp revokedAt = rs.getTimestamp("revoked_at");
+        UserAgentDictionary.Entry userAgent = userAgentDictionary.resolve(rs.getObject("user_agent_id", Integer.class));
+
+        AuthorizationWithClientDTO authorization = new AuthorizationWithClientDTO(
+                rs.getObject("id", UUID.class),
+                rs.getObject("client_id", UUID.class),
+                clientName != null ? clientName : "Client inconnu",
+                new HashSet<>(Arrays.asList(scopes)),
+                rs.getString("ip_address"),
+                userAgent != null ? userAgent.browser() : null,
+                userAgent != null ? userAgent.deviceType() : null,
+                userAgent != null ? userAgent.os() : null,
+                rs.getString("country"),
+                rs.getString("city"),
+                rs.getTimestamp("granted_at").toInstant(),
+                revokedAt != null ? revokedAt.toInstant() : null,
+                rs.getBoolean("is_active"),
+                rs.getInt("active_token_count")
+        );
+        return new PageRow(authorization, rs.getTimestamp("sort_key"));
+    }
+
+    private record PageRow(AuthorizationWithClientDTO authorization, Timestamp sortKey) {
+    }
+}
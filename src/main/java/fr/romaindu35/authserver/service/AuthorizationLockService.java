@@ -0,0 +1,49 @@
+package fr.romaindu35.authserver.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.UUID;
+
+/**
+ * Striped lock serializing concurrent operations on the same (user, client) pair.
+ * Backed by PostgreSQL transaction-level advisory locks so it holds across nodes:
+ * two logins of the same user to the same client are serialized, while different pairs never wait on each other.
+ * The lock is released automatically when the surrounding transaction commits or rolls back.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class AuthorizationLockService {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Acquires the advisory lock of the given user/client pair for the current transaction.
+     * Blocks until any other transaction holding the same pair commits or rolls back.
+     * Re-entrant: acquiring it twice in the same transaction does not block.
+     *
+     * @param userId   the user's UUID
+     * @param clientId the OAuth2 client ID
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void lockPair(UUID userId, UUID clientId) {
+        // The two-key variant of pg_advisory_xact_lock gives one stripe per (user, client) pair,
+        // keeping it apart from any single-key advisory lock used elsewhere.
+        jdbcTemplate.queryForList("SELECT pg_advisory_xact_lock(?, ?)", stripeKey(userId), stripeKey(clientId));
+        log.debug("Acquired authorization lock for user {} and client {}", userId, clientId);
+    }
+
+    /**
+     * Folds a UUID into the 32-bit key expected by pg_advisory_xact_lock(int, int).
+     * Collisions only cause unrelated pairs to be serialized, never a correctness issue.
+     */
+    private static int stripeKey(UUID id) {
+        long hash = id.getMostSignificantBits() ^ id.getLeastSignificantBits();
+        return (int) (hash ^ (hash >>> 32));
+    }
+}
@@ -0,0 +1,136 @@
+package fr.romaindu35.authserver.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.lang.Nullable;
+import org.springframework.security.oauth2.server.authorization.OAuth2AuthorizationConsent;
+import org.springframework.security.oauth2.server.authorization.OAuth2AuthorizationConsentService;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.Assert;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decorator for OAuth2AuthorizationConsentService that caches consent lookups, absent consents included.
+ * The authorization endpoint looks the consent up on every request of a non-official client; returning users are
+ * then answered from memory.
+ *
+ * Entries are invalidated when this node saves or removes a consent, again once the surrounding transaction
+ * completes. Other nodes only see the change once their entry expires, so the two kinds of entries have their own TTL:
+ * <ul>
+ *     <li>an absent consent served stale only shows the consent page once more, so it keeps the long TTL;</li>
+ *     <li>a granted consent served stale lets a client obtain the scopes the user just revoked on another node without
+ *     asking again. Its TTL is the window during which that security trade-off is accepted, and should stay short;
+ *     with a zero TTL granted consents are never cached and every returning user reads the database.</li>
+ * </ul>
+ */
+public class CachingOAuth2AuthorizationConsentService implements OAuth2AuthorizationConsentService {
+
+    private final OAuth2AuthorizationConsentService delegate;
+    private final Cache<Key, Optional<OAuth2AuthorizationConsent>> consents;
+    // Incrémenté à chaque invalidation : une lecture concurrente d'une écriture n'est pas mise en cache
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private final Duration grantedTtl;
+
+    public CachingOAuth2AuthorizationConsentService(OAuth2AuthorizationConsentService delegate,
+                                                    MeterRegistry meterRegistry,
+                                                    long cacheSize,
+                                                    Duration absentTtl,
+                                                    Duration grantedTtl) {
+        Assert.notNull(delegate, "delegate cannot be null");
+        this.delegate = delegate;
+        this.grantedTtl = grantedTtl;
+        this.consents = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfter(new Expiry<Key, Optional<OAuth2AuthorizationConsent>>() {
+                    @Override
+                    public long expireAfterCreate(Key key, Optional<OAuth2AuthorizationConsent> consent, long currentTime) {
+                        return (consent.isPresent() ? grantedTtl : absentTtl).toNanos();
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(Key key, Optional<OAuth2AuthorizationConsent> consent, long currentTime,
+                                                  long currentDuration) {
+                        return expireAfterCreate(key, consent, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(Key key, Optional<OAuth2AuthorizationConsent> consent, long currentTime,
+                                                long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, consents, "authorizationConsents");
+    }
+
+    @Override
+    public void save(OAuth2AuthorizationConsent authorizationConsent) {
+        Assert.notNull(authorizationConsent, "authorizationConsent cannot be null");
+        this.delegate.save(authorizationConsent);
+        invalidate(authorizationConsent.getRegisteredClientId(), authorizationConsent.getPrincipalName());
+    }
+
+    @Override
+    public void remove(OAuth2AuthorizationConsent authorizationConsent) {
+        Assert.notNull(authorizationConsent, "authorizationConsent cannot be null");
+        this.delegate.remove(authorizationConsent);
+        invalidate(authorizationConsent.getRegisteredClientId(), authorizationConsent.getPrincipalName());
+    }
+
+    @Nullable
+    @Override
+    public OAuth2AuthorizationConsent findById(String registeredClientId, String principalName) {
+        Key key = new Key(registeredClientId, principalName);
+        Optional<OAuth2AuthorizationConsent> cached = this.consents.getIfPresent(key);
+        if (cached != null) {
+            return cached.orElse(null);
+        }
+
+        // Pas de Cache.get(key, loader) : la requête JDBC bloquerait un bin de la map (et le porteur d'un thread virtuel)
+        long stamp = this.invalidations.get();
+        OAuth2AuthorizationConsent consent = this.delegate.findById(registeredClientId, principalName);
+        // Only committed state is cached: a lookup inside a transaction may see its own uncommitted writes
+        if (this.invalidations.get() == stamp && !TransactionSynchronizationManager.isActualTransactionActive()
+                && (consent == null || this.grantedTtl.isPositive())) {
+            this.consents.asMap().putIfAbsent(key, Optional.ofNullable(consent));
+        }
+        return consent;
+    }
+
+    /**
+     * Drops the cached consent of a user for a client, now and once the current transaction (if any) completes,
+     * so that the next lookup reads the database.
+     *
+     * @param registeredClientId the registered client id
+     * @param principalName      the principal name
+     */
+    public void invalidate(String registeredClientId, String principalName) {
+        Key key = new Key(registeredClientId, principalName);
+        evict(key);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    evict(key);
+                }
+            });
+        }
+    }
+
+    private void evict(Key key) {
+        this.invalidations.incrementAndGet();
+        this.consents.invalidate(key);
+    }
+
+    private record Key(String registeredClientId, String principalName) {
+    }
+}
@@ -0,0 +1,172 @@
+package fr.romaindu35.authserver.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import fr.romaindu35.authserver.entity.OAuth2Client;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Read model of the OAuth2 client fields shown to users (name, owner, type, official flag), cached by id and by
+ * client_id. A miss is filled by one query joining the owner, instead of loading the client and user entities.
+ * Unknown clients are cached too.
+ *
+ * Entries are evicted when ClientManagementService changes a client, again once its transaction completes, and
+ * expire after a TTL which bounds how long another node's changes can go unseen.
+ *
+ * Only committed state read from the primary is cached, since the token issuance path (tracking service) trusts
+ * the cached client type:
+ * <ul>
+ *     <li>reads inside a read-only transaction are not cached, as they may be served by a lagging replica;</li>
+ *     <li>no read is cached while a transaction that changed a client is still open, as that transaction's own
+ *     reads see its uncommitted change.</li>
+ * </ul>
+ * Other transactions read the primary at READ COMMITTED, so their reads are cached like autocommitted ones.
+ */
+@Service
+public class ClientDisplayCache {
+
+    private static final String SELECT_SQL = """
+            SELECT c.id, c.client_id, c.client_name, c.client_type, c.official, u.username AS owner_username
+            FROM oauth2_client c
+            LEFT JOIN users u ON u.id = c.owner_id
+            """;
+
+    private static final RowMapper<ClientDisplay> ROW_MAPPER = (rs, rowNum) -> new ClientDisplay(
+            rs.getObject("id", UUID.class),
+            rs.getString("client_id"),
+            rs.getString("client_name"),
+            rs.getString("owner_username"),
+            OAuth2Client.ClientType.valueOf(rs.getString("client_type")),
+            rs.getBoolean("official")
+    );
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Cache<UUID, Optional<ClientDisplay>> byId;
+    private final Cache<String, Optional<ClientDisplay>> byClientId;
+    // Incrémenté à chaque éviction : une lecture concurrente d'une modification n'est pas mise en cache
+    private final AtomicLong evictions = new AtomicLong();
+    // Transactions ouvertes ayant modifié un client
+    private final AtomicInteger pendingChanges = new AtomicInteger();
+
+    public ClientDisplayCache(JdbcTemplate jdbcTemplate,
+                              MeterRegistry meterRegistry,
+                              @Value("${yoxo.client-display.cache-size}") long cacheSize,
+                              @Value("${yoxo.client-display.cache-ttl}") Duration ttl) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.byId = Caffeine.newBuilder().maximumSize(cacheSize).expireAfterWrite(ttl).recordStats().build();
+        this.byClientId = Caffeine.newBuilder().maximumSize(cacheSize).expireAfterWrite(ttl).recordStats().build();
+        CaffeineCacheMetrics.monitor(meterRegistry, byId, "clientDisplay", "key", "id");
+        CaffeineCacheMetrics.monitor(meterRegistry, byClientId, "clientDisplay", "key", "clientId");
+    }
+
+    /**
+     * Returns the display data of a client by its id.
+     *
+     * @param id the client UUID
+     * @return the display data, empty if the client does not exist
+     */
+    public Optional<ClientDisplay> findById(UUID id) {
+        Optional<ClientDisplay> cached = byId.getIfPresent(id);
+        if (cached != null) {
+            return cached;
+        }
+        long stamp = evictions.get();
+        Optional<ClientDisplay> display = query(SELECT_SQL + "WHERE c.id = ?", id);
+        if (mayCache(stamp)) {
+            byId.put(id, display);
+            display.ifPresent(d -> byClientId.put(d.clientId(), display));
+        }
+        return display;
+    }
+
+    /**
+     * Returns the display data of a client by its public client_id.
+     *
+     * @param clientId the OAuth2 client_id
+     * @return the display data, empty if no client has this client_id
+     */
+    public Optional<ClientDisplay> findByClientId(String clientId) {
+        Optional<ClientDisplay> cached = byClientId.getIfPresent(clientId);
+        if (cached != null) {
+            return cached;
+        }
+        long stamp = evictions.get();
+        Optional<ClientDisplay> display = query(SELECT_SQL + "WHERE c.client_id = ?", clientId);
+        if (mayCache(stamp)) {
+            byClientId.put(clientId, display);
+            display.ifPresent(d -> byId.put(d.id(), display));
+        }
+        return display;
+    }
+
+    /**
+     * Evicts a client, now and once the current transaction (if any) completes.
+     *
+     * @param id       the client UUID
+     * @param clientId the client_id it had before the change
+     */
+    public void evict(UUID id, String clientId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            pendingChanges.incrementAndGet();
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    evictNow(id, clientId);
+                    pendingChanges.decrementAndGet();
+                }
+            });
+        }
+        evictNow(id, clientId);
+    }
+
+    private boolean mayCache(long stamp) {
+        return evictions.get() == stamp
+                && pendingChanges.get() == 0
+                && !TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+    }
+
+    private void evictNow(UUID id, String clientId) {
+        evictions.incrementAndGet();
+        byId.invalidate(id);
+        byClientId.invalidate(clientId);
+    }
+
+    private Optional<ClientDisplay> query(String sql, Object key) {
+        List<ClientDisplay> rows = jdbcTemplate.query(sql, ROW_MAPPER, key);
+        return rows.isEmpty() ? Optional.empty() : Optional.of(rows.getFirst());
+    }
+
+    /**
+     * Display data of an OAuth2 client.
+     *
+     * @param id            the client UUID
+     * @param clientId      the public client_id
+     * @param clientName    the client name
+     * @param ownerUsername the username of the owner, null if the owner no longer exists
+     * @param type          the client type
+     * @param official      whether the client is official (no consent page)
+     */
+    public record ClientDisplay(
+            UUID id,
+            String clientId,
+            String clientName,
+            String ownerUsername,
+            OAuth2Client.ClientType type,
+            boolean official
+    ) {
+    }
+}
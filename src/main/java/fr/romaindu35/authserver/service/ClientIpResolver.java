@@ -0,0 +1,166 @@
+package fr.romaindu35.authserver.service;
+
+import fr.romaindu35.authserver.utils.CidrTrie;
+import fr.romaindu35.authserver.utils.IpAddressBits;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+
+/**
+ * Resolves the real client IP address of a request behind trusted reverse proxies.
+ * The forwarded chain (Forwarded, or X-Forwarded-For if absent) is only read when the direct peer is a trusted
+ * proxy, and is walked right to left: the first hop that is not a trusted proxy is the client.
+ * Hops written by the client itself (left of it) are never trusted, so they cannot spoof the address.
+ *
+ * The chain is scanned in place, hop by hop, without regex, splitting or substrings. Each request allocates one
+ * IpAddressBits holder, reused for every hop, and the InetAddress of the kept address (plus a list when the chain
+ * spans several headers); the hops themselves allocate nothing.
+ */
+@Service
+@Slf4j
+public class ClientIpResolver {
+
+    private static final String FORWARDED = "Forwarded";
+    private static final String X_FORWARDED_FOR = "X-Forwarded-For";
+
+    private final CidrTrie trustedProxies;
+
+    public ClientIpResolver(@Value("${yoxo.trusted-proxies}") List<String> trustedProxies) {
+        this.trustedProxies = CidrTrie.compile(trustedProxies);
+        log.info("Client IP resolution trusts {} proxy block(s): {}", trustedProxies.size(), trustedProxies);
+    }
+
+    /**
+     * Resolves the client address of a request.
+     *
+     * @param request the HTTP request
+     * @return the client address; the direct peer address if it is not a trusted proxy
+     */
+    public InetAddress resolve(HttpServletRequest request) {
+        IpAddressBits candidate = new IpAddressBits();
+        if (!candidate.parse(request.getRemoteAddr())) {
+            log.debug("Unparsable remote address: {}", request.getRemoteAddr());
+            return InetAddress.getLoopbackAddress();
+        }
+        if (!trustedProxies.contains(candidate)) {
+            return candidate.toInetAddress();
+        }
+
+        boolean rfc7239 = request.getHeader(FORWARDED) != null;
+        Enumeration<String> values = request.getHeaders(rfc7239 ? FORWARDED : X_FORWARDED_FOR);
+        if (values == null || !values.hasMoreElements()) {
+            return candidate.toInetAddress();
+        }
+
+        // Plusieurs en-têtes forment une seule chaîne : le dernier contient les sauts les plus proches
+        String first = values.nextElement();
+        if (!values.hasMoreElements()) {
+            walk(first, rfc7239, candidate);
+            return candidate.toInetAddress();
+        }
+        List<String> headers = new ArrayList<>();
+        headers.add(first);
+        while (values.hasMoreElements()) {
+            headers.add(values.nextElement());
+        }
+        int i = headers.size() - 1;
+        while (i >= 0 && walk(headers.get(i), rfc7239, candidate)) {
+            i--;
+        }
+        return candidate.toInetAddress();
+    }
+
+    /**
+     * Walks one header value right to left, moving the candidate to each hop as long as the candidate is trusted.
+     * A hop that cannot be parsed leaves the candidate unchanged.
+     *
+     * @param value     the header value
+     * @param rfc7239   true for a Forwarded header, false for X-Forwarded-For
+     * @param candidate the current candidate (a trusted proxy on entry), updated in place
+     * @return true if every hop of the value was a trusted proxy, so the walk continues on the previous header
+     */
+    private boolean walk(String value, boolean rfc7239, IpAddressBits candidate) {
+        int end = value.length();
+        while (end > 0) {
+            int start = value.lastIndexOf(',', end - 1) + 1;
+            boolean parsed = rfc7239
+                    ? parseForwardedElement(value, start, end, candidate)
+                    : parseNode(value, start, end, candidate);
+            if (!parsed) {
+                // Saut illisible ou masqué ("unknown", "_hidden") : on garde le dernier proxy de confiance
+                return false;
+            }
+            if (!trustedProxies.contains(candidate)) {
+                return false;
+            }
+            end = start - 1;
+        }
+        return true;
+    }
+
+    /**
+     * Parses the "for" parameter of one Forwarded element (e.g. {@code for="[2001:db8::1]:4711";proto=https}).
+     */
+    private static boolean parseForwardedElement(String value, int start, int end, IpAddressBits target) {
+        int pos = start;
+        while (pos < end) {
+            int pairEnd = indexOf(value, ';', pos, end);
+            if (pairEnd < 0) {
+                pairEnd = end;
+            }
+            int pairStart = skipSpaces(value, pos, pairEnd);
+            if (value.regionMatches(true, pairStart, "for=", 0, 4)) {
+                return parseNode(value, pairStart + 4, pairEnd, target);
+            }
+            pos = pairEnd + 1;
+        }
+        return false;
+    }
+
+    /**
+     * Parses one node: an address, optionally quoted, bracketed (IPv6) and followed by a port.
+     */
+    private static boolean parseNode(String value, int start, int end, IpAddressBits target) {
+        start = skipSpaces(value, start, end);
+        while (end > start && value.charAt(end - 1) == ' ') {
+            end--;
+        }
+        if (end - start >= 2 && value.charAt(start) == '"' && value.charAt(end - 1) == '"') {
+            start++;
+            end--;
+        }
+        if (start < end && value.charAt(start) == '[') {
+            // [IPv6] ou [IPv6]:port
+            int close = indexOf(value, ']', start, end);
+            return close > start && target.parse(value, start + 1, close);
+        }
+        // IPv4:port (une IPv6 nue contient plusieurs ':')
+        int colon = indexOf(value, ':', start, end);
+        if (colon >= 0 && indexOf(value, ':', colon + 1, end) < 0) {
+            end = colon;
+        }
+        return target.parse(value, start, end);
+    }
+
+    private static int indexOf(String value, char c, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (value.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int skipSpaces(String value, int start, int end) {
+        while (start < end && value.charAt(start) == ' ') {
+            start++;
+        }
+        return start;
+    }
+}
@@ -35,6 +35,8 @@ public class ClientManagementService {
     private final OAuth2ClientRepository oauth2ClientRepository;
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
+    private final ClientDisplayCache clientDisplayCache;
+    private final ClientRateLimiter clientRateLimiter;
     private final SecureRandom secureRandom = new SecureRandom();
 
     /**
@@ -210,6 +212,8 @@ public class ClientManagementService {
         //client.setOfficial(configuration.official()); // L'attribut 'official' ne peut pas être modifié par l'utilisateur
 
         oauth2ClientRepository.save(client);
+        clientDisplayCache.evict(client.getId(), client.getClientId());
+        clientRateLimiter.evict(client.getClientId());
     }
 
     /**
@@ -232,6 +236,9 @@ public class ClientManagementService {
             throw new SecurityException("Vous n'êtes pas autorisé à modifier ce client");
         }
 
+        // L'ancien client_id ne doit plus être résolu
+        clientDisplayCache.evict(client.getId(), client.getClientId());
+        clientRateLimiter.evict(client.getClientId());
         String newClientId = generateClientId();
         client.setClientId(newClientId);
         client.setClientIdIssuedAt(Instant.now());
@@ -294,6 +301,8 @@ public class ClientManagementService {
         }
 
         oauth2ClientRepository.delete(client);
+        clientDisplayCache.evict(client.getId(), client.getClientId());
+        clientRateLimiter.evict(client.getClientId());
     }
 
     /**
@@ -0,0 +1,230 @@
+package fr.romaindu35.authserver.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import fr.romaindu35.authserver.entity.OAuth2Client;
+import fr.romaindu35.authserver.repository.OAuth2ClientRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token-bucket rate limiting of the OAuth2 endpoints. Limits depend on the client type.
+ * Before client authentication, a request is charged to the bucket of its (client_id, IP) pair, or of its IP if it
+ * does not name a known client: a client_id is public, so a bucket shared by all callers of a client could be emptied
+ * by anyone, and all the users of a public client (SPA, mobile app) would share it. Confidential clients also have a
+ * client-wide bucket, only charged once the client has authenticated.
+ *
+ * Each bucket is a single AtomicLong implementing GCRA (the "virtual scheduling" form of a token bucket):
+ * it holds the theoretical arrival time of the next request, and a request is admitted by one compare-and-set
+ * if that time is not further than the burst in the future. Admitting a request takes no lock; it allocates only
+ * the bucket key (client_id and IP concatenated), and a bucket the first time the key is seen.
+ * Buckets live in a size-bounded map and are dropped once idle for longer than the slowest bucket takes to refill.
+ */
+@Service
+public class ClientRateLimiter {
+
+    private static final String IP_KEY_PREFIX = "ip:";
+    private static final String CLIENT_KEY_PREFIX = "client:";
+
+    private final OAuth2ClientRepository clientRepository;
+    private final boolean enabled;
+    // Seau d'un couple (client_id, IP), avant authentification
+    private final Map<OAuth2Client.ClientType, Limit> callerLimits = new EnumMap<>(OAuth2Client.ClientType.class);
+    // Seau global d'un client confidentiel, après authentification
+    private final Map<OAuth2Client.ClientType, Limit> clientLimits = new EnumMap<>(OAuth2Client.ClientType.class);
+    private final Limit ipLimit;
+
+    private final Cache<String, Bucket> buckets;
+    // client_id -> type ; Optional.empty() mémorise les client_id inconnus
+    private final Cache<String, Optional<OAuth2Client.ClientType>> clientTypes;
+
+    public ClientRateLimiter(OAuth2ClientRepository clientRepository,
+                             MeterRegistry meterRegistry,
+                             @Value("${yoxo.rate-limit.enabled}") boolean enabled,
+                             @Value("${yoxo.rate-limit.max-buckets}") long maxBuckets,
+                             @Value("${yoxo.rate-limit.client.requests-per-second}") double clientRate,
+                             @Value("${yoxo.rate-limit.client.burst}") int clientBurst,
+                             @Value("${yoxo.rate-limit.server.requests-per-second}") double serverRate,
+                             @Value("${yoxo.rate-limit.server.burst}") int serverBurst,
+                             @Value("${yoxo.rate-limit.service.requests-per-second}") double serviceRate,
+                             @Value("${yoxo.rate-limit.service.burst}") int serviceBurst,
+                             @Value("${yoxo.rate-limit.ip.requests-per-second}") double ipRate,
+                             @Value("${yoxo.rate-limit.ip.burst}") int ipBurst) {
+        this.clientRepository = clientRepository;
+        this.enabled = enabled;
+        this.callerLimits.put(OAuth2Client.ClientType.CLIENT, new Limit(meterRegistry, "CLIENT", "caller", clientRate, clientBurst));
+        this.callerLimits.put(OAuth2Client.ClientType.SERVER, new Limit(meterRegistry, "SERVER", "caller", serverRate, serverBurst));
+        this.callerLimits.put(OAuth2Client.ClientType.SERVICE, new Limit(meterRegistry, "SERVICE", "caller", serviceRate, serviceBurst));
+        this.clientLimits.put(OAuth2Client.ClientType.SERVER, new Limit(meterRegistry, "SERVER", "client", serverRate, serverBurst));
+        this.clientLimits.put(OAuth2Client.ClientType.SERVICE, new Limit(meterRegistry, "SERVICE", "client", serviceRate, serviceBurst));
+        this.ipLimit = new Limit(meterRegistry, "ip", "caller", ipRate, ipBurst);
+
+        // Un seau inactif depuis plus longtemps que son remplissage complet est plein : il peut être oublié
+        long refillNanos = ipLimit.refillNanos();
+        for (Limit limit : callerLimits.values()) {
+            refillNanos = Math.max(refillNanos, limit.refillNanos());
+        }
+        for (Limit limit : clientLimits.values()) {
+            refillNanos = Math.max(refillNanos, limit.refillNanos());
+        }
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(maxBuckets)
+                .expireAfterAccess(Duration.ofNanos(refillNanos))
+                .build();
+        this.clientTypes = Caffeine.newBuilder()
+                .maximumSize(maxBuckets)
+                .expireAfterWrite(Duration.ofMinutes(5))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, buckets, "rateLimitBuckets");
+        CaffeineCacheMetrics.monitor(meterRegistry, clientTypes, "rateLimitClientTypes");
+    }
+
+    /**
+     * Admits or rejects a request to an OAuth2 endpoint, before the client is authenticated.
+     *
+     * @param clientId  the client_id named by the request, or null if none
+     * @param ipAddress the client IP address, used when the request does not name a known client
+     * @return 0 if the request is admitted, otherwise the delay in nanoseconds before a retry can be admitted
+     */
+    public long tryAcquire(String clientId, String ipAddress) {
+        if (!enabled) {
+            return 0;
+        }
+
+        if (clientId != null) {
+            Optional<OAuth2Client.ClientType> type = clientTypes.getIfPresent(clientId);
+            if (type == null) {
+                // client_id jamais vu : la recherche en base est d'abord décomptée du seau de l'IP,
+                // pour qu'une rafale de client_id inventés ne se transforme pas en rafale de requêtes SQL
+                long wait = acquire(IP_KEY_PREFIX + ipAddress, ipLimit);
+                if (wait > 0) {
+                    return wait;
+                }
+                type = clientRepository.findByClientId(clientId).map(OAuth2Client::getClientType);
+                clientTypes.put(clientId, type);
+            }
+            if (type.isPresent()) {
+                return acquire(clientId + '@' + ipAddress, callerLimits.get(type.get()));
+            }
+        }
+        return acquire(IP_KEY_PREFIX + ipAddress, ipLimit);
+    }
+
+    /**
+     * Admits or rejects a request of an authenticated client against its client-wide limit.
+     * Public clients have none: their callers are only limited per IP.
+     *
+     * @param clientId the client_id of the authenticated client
+     * @return 0 if the request is admitted, otherwise the delay in nanoseconds before a retry can be admitted
+     */
+    public long tryAcquireAuthenticated(String clientId) {
+        if (!enabled) {
+            return 0;
+        }
+        Optional<OAuth2Client.ClientType> type = clientTypes.getIfPresent(clientId);
+        if (type == null) {
+            type = clientRepository.findByClientId(clientId).map(OAuth2Client::getClientType);
+            clientTypes.put(clientId, type);
+        }
+        Limit limit = type.map(clientLimits::get).orElse(null);
+        return limit != null ? acquire(CLIENT_KEY_PREFIX + clientId, limit) : 0;
+    }
+
+    /**
+     * Forgets the cached type of a client_id when the client is changed or deleted, now and once the current
+     * transaction (if any) completes.
+     *
+     * @param clientId the client_id
+     */
+    public void evict(String clientId) {
+        clientTypes.invalidate(clientId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    clientTypes.invalidate(clientId);
+                }
+            });
+        }
+    }
+
+    private long acquire(String key, Limit limit) {
+        Bucket bucket = buckets.getIfPresent(key);
+        if (bucket == null) {
+            bucket = buckets.asMap().computeIfAbsent(key, k -> new Bucket(System.nanoTime()));
+        }
+        long wait = bucket.tryAcquire(limit, System.nanoTime());
+        (wait == 0 ? limit.admitted : limit.rejected).increment();
+        return wait;
+    }
+
+    /**
+     * Rate and burst of a kind of bucket, as GCRA parameters, and its metrics.
+     */
+    static final class Limit {
+
+        // Temps de remplissage d'un jeton
+        private final long emissionIntervalNanos;
+        // Avance maximale de l'heure d'arrivée théorique sur l'heure courante : (burst - 1) intervalles
+        private final long toleranceNanos;
+        private final Counter admitted;
+        private final Counter rejected;
+
+        Limit(MeterRegistry meterRegistry, String name, String scope, double requestsPerSecond, int burst) {
+            this.emissionIntervalNanos = (long) (1_000_000_000L / requestsPerSecond);
+            this.toleranceNanos = emissionIntervalNanos * (Math.max(1, burst) - 1);
+            this.admitted = meterRegistry.counter("yoxo.rate-limit.requests", "limit", name, "scope", scope, "outcome", "admitted");
+            this.rejected = meterRegistry.counter("yoxo.rate-limit.requests", "limit", name, "scope", scope, "outcome", "rejected");
+        }
+
+        /**
+         * @return the nanoseconds an empty bucket takes to be full again
+         */
+        long refillNanos() {
+            return emissionIntervalNanos + toleranceNanos;
+        }
+    }
+
+    /**
+     * GCRA state: the theoretical arrival time of the next conforming request, in System.nanoTime() units.
+     * A new bucket starts at the current time, i.e. full.
+     */
+    static final class Bucket {
+
+        private final AtomicLong theoreticalArrival;
+
+        Bucket(long now) {
+            this.theoreticalArrival = new AtomicLong(now);
+        }
+
+        /**
+         * @return 0 if admitted, otherwise the nanoseconds until a request would conform
+         */
+        long tryAcquire(Limit limit, long now) {
+            while (true) {
+                long tat = theoreticalArrival.get();
+                // max(tat, now) en arithmétique circulaire de nanoTime
+                long next = (tat - now > 0 ? tat : now) + limit.emissionIntervalNanos;
+                long excess = next - now - limit.emissionIntervalNanos - limit.toleranceNanos;
+                if (excess > 0) {
+                    return excess;
+                }
+                if (theoreticalArrival.compareAndSet(tat, next)) {
+                    return 0;
+                }
+            }
+        }
+    }
+}
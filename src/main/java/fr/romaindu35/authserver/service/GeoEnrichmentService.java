@@ -0,0 +1,199 @@
+package fr.romaindu35.authserver.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Resolves country and city of authorization history entries in the background.
+ * In "async" mode, entries are stored with their IP only and this worker geolocates them shortly after.
+ * In both modes, entries geolocated with an older GeoIP database are re-enriched once a newer one is loaded
+ * (if enabled; off by default, as the first newer database rewrites every entry older than the tracking), and entries
+ * created while no database was available are resolved once one is.
+ * Each batch looks every distinct IP up once, and the worker throttles itself to a maximum lookup rate.
+ * A batch is claimed with FOR UPDATE SKIP LOCKED and written in the same transaction, so several nodes share the
+ * pending entries instead of resolving the same ones.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class GeoEnrichmentService {
+
+    // Parcours de idx_authorization_history_geo_build : les entrées en attente (NULL) d'abord.
+    // Les lignes du lot restent verrouillées jusqu'à sa mise à jour : un autre nœud prend le lot suivant au lieu de
+    // refaire les mêmes recherches, et les lignes verrouillées par une connexion en cours sont reprises plus tard.
+    private static final String OUTDATED_SQL = """
+            SELECT id, host(ip_address) AS ip_address
+            FROM oauth2_authorization_history
+            WHERE ip_address IS NOT NULL
+              AND (geo_database_build IS NULL OR geo_database_build < ?)
+            ORDER BY geo_database_build NULLS FIRST
+            LIMIT ?
+            FOR UPDATE SKIP LOCKED
+            """;
+
+    private static final String PENDING_SQL = """
+            SELECT id, host(ip_address) AS ip_address
+            FROM oauth2_authorization_history
+            WHERE ip_address IS NOT NULL
+              AND geo_database_build IS NULL
+            LIMIT ?
+            FOR UPDATE SKIP LOCKED
+            """;
+
+    // Une entrée compactée entre la lecture du lot et sa mise à jour garde ses colonnes vides
+    private static final String UPDATE_SQL = """
+            UPDATE oauth2_authorization_history
+            SET country = ?, city = ?, geo_database_build = ?
+            WHERE id = ANY(?)
+              AND compacted = false
+              AND ip_address IS NOT NULL
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final GeoLocationService geoLocationService;
+
+    /**
+     * "sync": geolocate during token issuance; "async": store the IP only and let this worker geolocate it.
+     */
+    @Value("${geoip.enrichment.mode}")
+    private String mode;
+
+    @Value("${geoip.enrichment.batch-size}")
+    private int batchSize;
+
+    @Value("${geoip.enrichment.max-lookups-per-second}")
+    private int maxLookupsPerSecond;
+
+    @Value("${geoip.enrichment.reenrich-on-update}")
+    private boolean reenrichOnUpdate;
+
+    /**
+     * Checks whether geolocation is deferred to this worker instead of being done at grant time.
+     *
+     * @return true in "async" mode
+     */
+    public boolean isDeferred() {
+        return "async".equalsIgnoreCase(mode);
+    }
+
+    /**
+     * Processes pending entries batch by batch until none is left.
+     */
+    @Scheduled(fixedDelayString = "${geoip.enrichment.interval}", initialDelayString = "${geoip.enrichment.interval}")
+    public void enrich() {
+        Instant build = geoLocationService.getDatabaseBuild();
+        if (build == null) {
+            return;
+        }
+
+        long total = 0;
+        int processed;
+        BatchResult result;
+        do {
+            long start = System.nanoTime();
+            // Une transaction par lot : les verrous sont relâchés avant la pause de limitation du débit
+            result = transactionTemplate.execute(status -> enrichBatch(build));
+            processed = result.entries();
+            total += processed;
+            throttle(start, result.lookups());
+        } while (processed >= batchSize && result.lookups() > 0 && !Thread.currentThread().isInterrupted());
+
+        if (total > 0) {
+            log.info("Geo enrichment: {} history entries resolved with GeoIP database build {}", total, build);
+        }
+    }
+
+    /**
+     * Resolves one batch of entries, inside the caller's transaction which holds the row locks of the batch.
+     *
+     * @param build build date of the loaded database
+     * @return the number of entries read and the number of distinct IPs looked up
+     */
+    private BatchResult enrichBatch(Instant build) {
+        RowMapper<PendingEntry> rowMapper =
+                (rs, rowNum) -> new PendingEntry(rs.getObject("id", UUID.class), rs.getString("ip_address"));
+        List<PendingEntry> pending = reenrichOnUpdate
+                ? jdbcTemplate.query(OUTDATED_SQL, rowMapper, Timestamp.from(build), batchSize)
+                : jdbcTemplate.query(PENDING_SQL, rowMapper, batchSize);
+        if (pending.isEmpty()) {
+            return new BatchResult(0, 0);
+        }
+
+        // Une seule recherche par IP distincte du lot
+        Map<String, List<UUID>> idsByIp = new LinkedHashMap<>();
+        for (PendingEntry entry : pending) {
+            idsByIp.computeIfAbsent(entry.ipAddress(), ip -> new ArrayList<>()).add(entry.id());
+        }
+
+        List<ResolvedGroup> resolved = new ArrayList<>(idsByIp.size());
+        for (Map.Entry<String, List<UUID>> group : idsByIp.entrySet()) {
+            GeoLocationService.Resolution resolution = resolve(group.getKey(), build);
+            if (resolution == null) {
+                // Base déchargée entre-temps : le prochain passage reprendra ce lot
+                break;
+            }
+            resolved.add(new ResolvedGroup(resolution, group.getValue()));
+        }
+
+        jdbcTemplate.batchUpdate(UPDATE_SQL, resolved, resolved.size(), (ps, group) -> {
+            ps.setString(1, group.resolution().location().country());
+            ps.setString(2, group.resolution().location().city());
+            ps.setTimestamp(3, Timestamp.from(group.resolution().databaseBuild()));
+            ps.setArray(4, ps.getConnection().createArrayOf("uuid", group.ids().toArray()));
+        });
+        log.debug("Geo enrichment batch: {} entries, {} distinct IPs", pending.size(), resolved.size());
+        return new BatchResult(pending.size(), resolved.size());
+    }
+
+    private GeoLocationService.Resolution resolve(String ipAddress, Instant build) {
+        try {
+            // host() renvoie toujours une adresse littérale : pas de résolution DNS ici
+            return geoLocationService.resolveUncached(InetAddress.getByName(ipAddress));
+        } catch (UnknownHostException e) {
+            log.debug("Invalid IP address in history: {}", ipAddress, e);
+            return new GeoLocationService.Resolution(new GeoLocationService.LocationInfo(null, null), build);
+        }
+    }
+
+    /**
+     * Sleeps so that the lookups of the batch do not exceed the configured rate.
+     */
+    private void throttle(long startNanos, int lookups) {
+        long minimumNanos = lookups * 1_000_000_000L / Math.max(1, maxLookupsPerSecond);
+        long remainingMillis = (minimumNanos - (System.nanoTime() - startNanos)) / 1_000_000L;
+        if (remainingMillis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(remainingMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private record PendingEntry(UUID id, String ipAddress) {
+    }
+
+    private record ResolvedGroup(GeoLocationService.Resolution resolution, List<UUID> ids) {
+    }
+
+    private record BatchResult(int entries, int lookups) {
+    }
+}
@@ -1,28 +1,57 @@
 package fr.romaindu35.authserver.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.maxmind.db.CHMCache;
+import com.maxmind.db.Reader;
 import com.maxmind.geoip2.DatabaseReader;
 import com.maxmind.geoip2.exception.GeoIp2Exception;
 import com.maxmind.geoip2.model.CityResponse;
 import com.maxmind.geoip2.record.AbstractNamedRecord;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.io.File;
+import java.io.Closeable;
 import java.io.IOException;
 import java.net.InetAddress;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Service for geolocation lookup using MaxMind GeoLite2 database.
  * Provides country and city information based on IP addresses.
+ * The database is memory-mapped with MaxMind's node cache, and lookup results are cached per IP address.
+ *
+ * The database file is watched: when it is replaced, a new reader is opened in the background and swapped in
+ * atomically. Lookups never wait on a lock; the previous reader is closed once its in-flight lookups are done,
+ * and the result cache is refreshed against the new database instead of being dropped.
+ * Replace the file with an atomic move (write a temporary file, then rename it) so the old mapping stays valid.
  */
 @Service
 @Slf4j
 public class GeoLocationService {
 
-    private DatabaseReader databaseReader;
+    private static final LocationInfo UNKNOWN_LOCATION = new LocationInfo(null, null);
+
+    private final AtomicReference<ReaderHandle> currentReader = new AtomicReference<>();
 
     @Value("${geoip.enabled}")
     private boolean geoIpEnabled;
@@ -30,8 +59,30 @@ public class GeoLocationService {
     @Value("${geoip.database.path}")
     private String GEOIP_DATABASE_PATH;
 
+    @Value("${geoip.watch.enabled}")
+    private boolean watchEnabled;
+
+    // Délai sans nouvelle modification avant de recharger le fichier (évite de lire un fichier en cours d'écriture)
+    @Value("${geoip.watch.quiet-period}")
+    private Duration quietPeriod;
+
+    private final Cache<InetAddress, LocationInfo> locationCache;
+    private Thread watcherThread;
+    private WatchService watchService;
+
+    public GeoLocationService(MeterRegistry meterRegistry,
+                              @Value("${geoip.cache.size}") long cacheSize,
+                              @Value("${geoip.cache.ttl}") Duration cacheTtl) {
+        this.locationCache = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterWrite(cacheTtl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, locationCache, "geoLocation");
+    }
+
     /**
-     * Initializes the GeoIP database reader on application startup.
+     * Initializes the GeoIP database reader on application startup and starts watching the database file.
      * Logs a warning if the database file is not found.
      */
     @PostConstruct
@@ -40,46 +91,131 @@ public class GeoLocationService {
             log.info("GeoIP lookup is disabled by configuration.");
             return;
         }
-        File database = new File(GEOIP_DATABASE_PATH);
-        if (!database.exists()) {
+        Path database = Path.of(GEOIP_DATABASE_PATH).toAbsolutePath();
+        if (!Files.exists(database)) {
             log.warn("GeoIP database not found at: {}. Geolocation features will be unavailable.", GEOIP_DATABASE_PATH);
-            return;
+        } else {
+            try {
+                swapReader(openReader(database));
+                log.info("GeoIP database loaded successfully from: {}", GEOIP_DATABASE_PATH);
+            } catch (IOException e) {
+                log.error("Failed to load GeoIP database from: {}", GEOIP_DATABASE_PATH, e);
+            }
         }
 
-        try {
-            this.databaseReader = new DatabaseReader.Builder(database).build();
-            log.info("GeoIP database loaded successfully from: {}", GEOIP_DATABASE_PATH);
-        } catch (IOException e) {
-            log.error("Failed to load GeoIP database from: {}", GEOIP_DATABASE_PATH, e);
+        if (watchEnabled) {
+            startWatcher(database);
+        }
+    }
+
+    /**
+     * Stops the file watcher and closes the current reader.
+     */
+    @PreDestroy
+    public void shutdown() {
+        if (watcherThread != null) {
+            watcherThread.interrupt();
+        }
+        closeQuietly(watchService);
+        ReaderHandle handle = currentReader.getAndSet(null);
+        if (handle != null) {
+            handle.retire();
         }
     }
 
     /**
      * Looks up geolocation information for the given IP address.
      *
-     * @param ipAddress the IP address to look up (IPv4 or IPv6)
+     * @param ipAddress the IP address to look up (IPv4 or IPv6), already parsed
      * @return LocationInfo containing country and city, or empty values if lookup fails
      */
-    public LocationInfo getLocationFromIp(String ipAddress) {
-        if (databaseReader == null) {
+    public LocationInfo getLocationFromIp(InetAddress ipAddress) {
+        if (currentReader.get() == null) {
             log.debug("GeoIP database not available, skipping geolocation for IP: {}", ipAddress);
-            return new LocationInfo(null, null);
+            return UNKNOWN_LOCATION;
         }
 
-        if (ipAddress == null || ipAddress.isBlank()) {
-            log.debug("Invalid IP address provided: {}", ipAddress);
-            return new LocationInfo(null, null);
+        if (ipAddress == null) {
+            log.debug("No IP address provided");
+            return UNKNOWN_LOCATION;
         }
 
         // Skip private/local IP addresses
         if (isPrivateOrLocalIp(ipAddress)) {
             log.debug("Private or local IP address detected: {}, skipping geolocation", ipAddress);
-            return new LocationInfo(null, null);
+            return UNKNOWN_LOCATION;
         }
 
+        LocationInfo cached = locationCache.getIfPresent(ipAddress);
+        if (cached != null) {
+            return cached;
+        }
+
+        // Not loaded through Cache.get(key, loader): the loader runs inside a synchronized map bin, and a page fault
+        // on the memory-mapped file there would pin the carrier of a virtual thread and block the other keys of the bin.
+        // Concurrent misses on one address may each look it up; the results are identical.
+        ReaderHandle handle = acquireReader();
+        if (handle == null) {
+            return UNKNOWN_LOCATION;
+        }
         try {
-            InetAddress inetAddress = InetAddress.getByName(ipAddress);
-            CityResponse response = databaseReader.city(inetAddress);
+            LocationInfo location = lookup(handle.reader(), ipAddress);
+            // Une base rechargée entre-temps rafraîchit elle-même le cache : ne pas y remettre l'ancien résultat
+            if (currentReader.get() == handle) {
+                locationCache.put(ipAddress, location);
+            }
+            return location;
+        } finally {
+            handle.release();
+        }
+    }
+
+    /**
+     * Returns the build date of the loaded database.
+     *
+     * @return the build date, or null if no database is loaded
+     */
+    public Instant getDatabaseBuild() {
+        ReaderHandle handle = currentReader.get();
+        return handle != null ? handle.reader().getMetadata().getBuildDate().toInstant() : null;
+    }
+
+    /**
+     * Looks up an IP address without going through the result cache, together with the build of the database used.
+     * Meant for background enrichment, which must not evict the addresses of the login path from the cache.
+     *
+     * @param ipAddress the IP address to look up
+     * @return the location and database build, or null if no database is loaded
+     */
+    public Resolution resolveUncached(InetAddress ipAddress) {
+        ReaderHandle handle = acquireReader();
+        if (handle == null) {
+            return null;
+        }
+        try {
+            DatabaseReader reader = handle.reader();
+            LocationInfo location = isPrivateOrLocalIp(ipAddress) ? UNKNOWN_LOCATION : lookup(reader, ipAddress);
+            return new Resolution(location, reader.getMetadata().getBuildDate().toInstant());
+        } finally {
+            handle.release();
+        }
+    }
+
+    private LocationInfo lookup(InetAddress ipAddress) {
+        ReaderHandle handle = acquireReader();
+        if (handle == null) {
+            return UNKNOWN_LOCATION;
+        }
+        try {
+            return lookup(handle.reader(), ipAddress);
+        } finally {
+            handle.release();
+        }
+    }
+
+    private LocationInfo lookup(DatabaseReader reader, InetAddress ipAddress) {
+        try {
+            CityResponse response = reader.city(ipAddress);
 
             String country = Optional.ofNullable(response.getCountry())
                     .map(AbstractNamedRecord::getName)
@@ -94,29 +230,154 @@ public class GeoLocationService {
 
         } catch (IOException | GeoIp2Exception e) {
             log.debug("Failed to lookup geolocation for IP: {}", ipAddress, e);
-            return new LocationInfo(null, null);
+            return UNKNOWN_LOCATION;
         }
     }
 
     /**
-     * Checks if the IP address is private or local (loopback, link-local, etc.)
+     * Pins the current reader for one lookup, so it is not closed while in use.
+     * Lock-free: if a swap happens between reading the reference and pinning it, the pin is dropped and retried.
      *
-     * @param ipAddress the IP address to check
-     * @return true if the IP is private or local
+     * @return the pinned reader, to be released after use, or null if no database is loaded
      */
-    private boolean isPrivateOrLocalIp(String ipAddress) {
+    private ReaderHandle acquireReader() {
+        while (true) {
+            ReaderHandle handle = currentReader.get();
+            if (handle == null) {
+                return null;
+            }
+            handle.pin();
+            if (currentReader.get() == handle) {
+                return handle;
+            }
+            handle.release();
+        }
+    }
+
+    static DatabaseReader openReader(Path database) throws IOException {
+        // Memory-mapped: the OS page cache holds the file instead of the heap.
+        // CHMCache keeps decoded data nodes, shared by all lookups resolving to the same record.
+        return new DatabaseReader.Builder(database.toFile())
+                .fileMode(Reader.FileMode.MEMORY_MAPPED)
+                .withCache(new CHMCache())
+                .build();
+    }
+
+    private void startWatcher(Path database) {
+        Path directory = database.getParent();
+        if (directory == null || !Files.isDirectory(directory)) {
+            log.warn("GeoIP database directory {} does not exist, updates will require a restart", directory);
+            return;
+        }
+        try {
+            watchService = directory.getFileSystem().newWatchService();
+            directory.register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            log.error("Failed to watch GeoIP database directory {}, updates will require a restart", directory, e);
+            return;
+        }
+
+        watcherThread = Thread.ofPlatform()
+                .name("geoip-watcher")
+                .daemon()
+                .start(() -> watch(database));
+        log.info("Watching GeoIP database {} for updates", database);
+    }
+
+    private void watch(Path database) {
+        Path fileName = database.getFileName();
         try {
-            InetAddress inetAddress = InetAddress.getByName(ipAddress);
-            return inetAddress.isLoopbackAddress() ||
-                   inetAddress.isLinkLocalAddress() ||
-                   inetAddress.isSiteLocalAddress() ||
-                   inetAddress.isAnyLocalAddress();
-        } catch (Exception e) {
-            log.debug("Failed to parse IP address: {}", ipAddress, e);
-            return false;
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = watchService.take();
+                boolean changed = containsFile(key, fileName);
+                key.reset();
+                if (!changed) {
+                    continue;
+                }
+
+                // Attendre la fin de l'écriture : toute nouvelle modification relance le délai
+                WatchKey next;
+                while ((next = watchService.poll(quietPeriod.toMillis(), TimeUnit.MILLISECONDS)) != null) {
+                    next.pollEvents();
+                    next.reset();
+                }
+                reload(database);
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            Thread.currentThread().interrupt();
         }
     }
 
+    private static boolean containsFile(WatchKey key, Path fileName) {
+        boolean found = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (fileName.equals(event.context())) {
+                found = true;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Opens the updated database and swaps it in, then refreshes the cached lookups against it.
+     * Runs on the watcher thread: lookups keep using the previous reader until the swap.
+     */
+    private void reload(Path database) {
+        DatabaseReader reader;
+        try {
+            reader = openReader(database);
+        } catch (IOException e) {
+            log.error("Failed to load updated GeoIP database from {}, keeping the current one", database, e);
+            return;
+        }
+
+        swapReader(reader);
+        log.info("GeoIP database reloaded from {} (build {})", database, reader.getMetadata().getBuildDate());
+
+        // Rafraîchir le cache au lieu de le vider : les IP fréquentes restent servies sans recherche
+        for (InetAddress ipAddress : Set.copyOf(locationCache.asMap().keySet())) {
+            locationCache.put(ipAddress, lookup(ipAddress));
+        }
+    }
+
+    /**
+     * Makes the given reader serve the next lookups; the previous one is closed once its in-flight lookups are done.
+     *
+     * @param reader the newly opened reader
+     */
+    void swapReader(DatabaseReader reader) {
+        ReaderHandle previous = currentReader.getAndSet(new ReaderHandle(reader));
+        if (previous != null) {
+            previous.retire();
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            log.debug("Failed to close {}", closeable, e);
+        }
+    }
+
+    /**
+     * Checks if the IP address is private or local (loopback, link-local, etc.)
+     *
+     * @param inetAddress the IP address to check
+     * @return true if the IP is private or local
+     */
+    private boolean isPrivateOrLocalIp(InetAddress inetAddress) {
+        return inetAddress.isLoopbackAddress() ||
+               inetAddress.isLinkLocalAddress() ||
+               inetAddress.isSiteLocalAddress() ||
+               inetAddress.isAnyLocalAddress();
+    }
+
     /**
      * Record containing geolocation information.
      *
@@ -125,4 +386,57 @@ public class GeoLocationService {
      */
     public record LocationInfo(String country, String city) {
     }
+
+    /**
+     * Result of an uncached lookup.
+     *
+     * @param location the country and city found
+     * @param databaseBuild build date of the database that produced it
+     */
+    public record Resolution(LocationInfo location, Instant databaseBuild) {
+    }
+
+    /**
+     * A reader and the number of lookups currently using it.
+     * Once retired (replaced by a newer reader), it is closed by whoever brings the count down to zero.
+     */
+    private static final class ReaderHandle {
+
+        private final DatabaseReader reader;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private volatile boolean retired;
+
+        ReaderHandle(DatabaseReader reader) {
+            this.reader = reader;
+        }
+
+        DatabaseReader reader() {
+            return reader;
+        }
+
+        void pin() {
+            inFlight.incrementAndGet();
+        }
+
+        void release() {
+            if (inFlight.decrementAndGet() == 0 && retired) {
+                closeOnce();
+            }
+        }
+
+        void retire() {
+            retired = true;
+            if (inFlight.get() == 0) {
+                closeOnce();
+            }
+        }
+
+        private void closeOnce() {
+            if (closed.compareAndSet(false, true)) {
+                closeQuietly(reader);
+                log.debug("Previous GeoIP database reader closed");
+            }
+        }
+    }
 }
@@ -0,0 +1,225 @@
+package fr.romaindu35.authserver.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compacts old superseded entries of the authorization history.
+ * Every scope change archives the previous entry (is_active=false, revoked_at NULL) and inserts a new full one,
+ * duplicating its request metadata. Once superseded for longer than the configured age, an entry whose metadata
+ * is identical to its successor keeps only its scopes and dates: the metadata columns are cleared and the entry is
+ * flagged as compacted. The event timeline reads them back from the nearest newer non-compacted entry.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class HistoryCompactionService {
+
+    // Lot suivant de candidates dans l'ordre (granted_at, id), lu par idx_authorization_history_compaction_candidates :
+    // le curseur avance aussi sur les entrées non éligibles, qui ne sont donc lues qu'une fois par passage.
+    // Seules les candidates dont les métadonnées sont identiques à celles de l'entrée suivante, remplacée depuis plus
+    // de min-age, sont compactées. L'entrée suivante est lue par idx_authorization_history_timeline ; elle ne doit pas
+    // être compactée elle-même, sinon ses colonnes vides ne permettent plus la comparaison.
+    private static final String COMPACT_BATCH_SQL = """
+            WITH scanned AS (
+                SELECT h.*
+                FROM oauth2_authorization_history h
+                WHERE h.is_active = false
+                  AND h.revoked_at IS NULL
+                  AND h.compacted = false
+                  AND h.granted_at < ?
+                  AND (h.granted_at, h.id) > (?, ?)
+                ORDER BY h.granted_at ASC, h.id ASC
+                LIMIT ?
+                FOR UPDATE SKIP LOCKED
+            ), candidates AS (
+                SELECT h.id
+                FROM scanned h
+                CROSS JOIN LATERAL (
+                    SELECT n.*
+                    FROM oauth2_authorization_history n
+                    WHERE n.user_id = h.user_id
+                      AND n.client_id = h.client_id
+                      AND (n.granted_at, n.id) > (h.granted_at, h.id)
+                    ORDER BY n.granted_at ASC, n.id ASC
+                    LIMIT 1
+                ) n
+                WHERE n.compacted = false
+                  AND n.granted_at < ?
+                  AND n.ip_address IS NOT DISTINCT FROM h.ip_address
+                  AND n.user_agent_id IS NOT DISTINCT FROM h.user_agent_id
+                  AND n.country IS NOT DISTINCT FROM h.country
+                  AND n.city IS NOT DISTINCT FROM h.city
+            ), compacted AS (
+                UPDATE oauth2_authorization_history
+                SET compacted = true,
+                    ip_address = NULL,
+                    user_agent_id = NULL,
+                    country = NULL,
+                    city = NULL
+                WHERE id IN (SELECT id FROM candidates)
+                RETURNING id
+            ), last_scanned AS (
+                SELECT granted_at, id
+                FROM scanned
+                ORDER BY granted_at DESC, id DESC
+                LIMIT 1
+            )
+            SELECT (SELECT COUNT(*) FROM scanned) AS scanned,
+                   (SELECT COUNT(*) FROM compacted) AS compacted,
+                   (SELECT granted_at FROM last_scanned) AS last_granted_at,
+                   (SELECT id FROM last_scanned) AS last_id
+            """;
+
+    // Estimations du planificateur : reltuples vaut -1 tant que la table n'a jamais été analysée (PostgreSQL 14+),
+    // et compacted = true est absent des valeurs fréquentes tant qu'aucune entrée n'est compactée
+    private static final String STATISTICS_SQL = """
+            SELECT GREATEST(c.reltuples, 0)::bigint AS estimated_rows,
+                   COALESCE((
+                       SELECT s.most_common_freqs[array_position(s.most_common_vals::text::boolean[], true)]
+                       FROM pg_stats s
+                       WHERE s.schemaname = n.nspname
+                         AND s.tablename = c.relname
+                         AND s.attname = 'compacted'
+                   ), 0) AS compacted_fraction,
+                   pg_table_size(c.oid) AS table_bytes,
+                   pg_indexes_size(c.oid) AS index_bytes
+            FROM pg_class c
+            JOIN pg_namespace n ON n.oid = c.relnamespace
+            WHERE c.oid = 'oauth2_authorization_history'::regclass
+            """;
+
+    // Curseur initial : strictement inférieur à toute clé réelle
+    private static final Timestamp MIN_GRANTED_AT = Timestamp.from(Instant.EPOCH);
+    private static final UUID MIN_ID = new UUID(0L, 0L);
+
+    private static final RowMapper<Batch> BATCH_MAPPER = (rs, rowNum) -> new Batch(
+            rs.getInt("scanned"),
+            rs.getInt("compacted"),
+            rs.getTimestamp("last_granted_at"),
+            rs.getObject("last_id", UUID.class)
+    );
+
+    private final JdbcTemplate jdbcTemplate;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${yoxo.history-compaction.min-age}")
+    private Duration minAge;
+
+    @Value("${yoxo.history-compaction.batch-size}")
+    private int batchSize;
+
+    private final AtomicLong fullRows = new AtomicLong();
+    private final AtomicLong compactedRows = new AtomicLong();
+    private final AtomicLong tableBytes = new AtomicLong();
+    private final AtomicLong indexBytes = new AtomicLong();
+    private Counter compactedCounter;
+
+    /**
+     * Registers the history size metrics and takes an initial measurement.
+     */
+    @PostConstruct
+    public void init() {
+        Gauge.builder("yoxo.history.rows", fullRows, AtomicLong::get)
+                .description("Authorization history entries, estimated from the planner statistics")
+                .tag("state", "full")
+                .register(meterRegistry);
+        Gauge.builder("yoxo.history.rows", compactedRows, AtomicLong::get)
+                .description("Authorization history entries, estimated from the planner statistics")
+                .tag("state", "compacted")
+                .register(meterRegistry);
+        Gauge.builder("yoxo.history.size", tableBytes, AtomicLong::get)
+                .description("On-disk size of the authorization history")
+                .tag("part", "table")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("yoxo.history.size", indexBytes, AtomicLong::get)
+                .description("On-disk size of the authorization history")
+                .tag("part", "indexes")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        compactedCounter = Counter.builder("yoxo.history.compaction.compacted")
+                .description("Authorization history entries compacted")
+                .register(meterRegistry);
+
+        refreshStatistics();
+    }
+
+    /**
+     * Compacts eligible entries in batches following a (granted_at, id) cursor, each batch being a single
+     * autocommitted statement, then reports the history size before and after.
+     */
+    @Scheduled(cron = "${yoxo.history-compaction.cron}")
+    public void compact() {
+        refreshStatistics();
+        long rowsBefore = fullRows.get() + compactedRows.get();
+        long compactedBefore = compactedRows.get();
+        long bytesBefore = tableBytes.get() + indexBytes.get();
+
+        // Une entrée n'est éligible que si sa suivante a été accordée avant cutoff, donc elle aussi
+        Timestamp cutoff = Timestamp.from(Instant.now().minus(minAge));
+        long total = 0;
+        Batch batch = new Batch(0, 0, MIN_GRANTED_AT, MIN_ID);
+        do {
+            batch = jdbcTemplate.queryForObject(COMPACT_BATCH_SQL, BATCH_MAPPER,
+                    cutoff, batch.lastGrantedAt(), batch.lastId(), batchSize, cutoff);
+            total += batch.compacted();
+        } while (batch.scanned() >= batchSize);
+
+        if (total == 0) {
+            log.debug("History compaction: nothing to compact");
+            return;
+        }
+        compactedCounter.increment(total);
+
+        // Rend l'espace des anciennes versions de lignes réutilisable (ne verrouille pas la table)
+        jdbcTemplate.execute("VACUUM (ANALYZE) oauth2_authorization_history");
+
+        refreshStatistics();
+        log.info("History compaction: {} entries compacted; before: ~{} rows (~{} compacted), {} bytes; after: ~{} rows (~{} compacted), {} bytes",
+                total, rowsBefore, compactedBefore, bytesBefore,
+                fullRows.get() + compactedRows.get(), compactedRows.get(), tableBytes.get() + indexBytes.get());
+    }
+
+    /**
+     * Reads the history size from the planner statistics instead of counting the table: the row count is
+     * pg_class.reltuples and the compacted share is the frequency of compacted = true in pg_stats, both kept up to
+     * date by autovacuum and by the VACUUM (ANALYZE) following a compaction. The sizes are those of the files.
+     */
+    private void refreshStatistics() {
+        jdbcTemplate.query(STATISTICS_SQL, rs -> {
+            long rows = rs.getLong("estimated_rows");
+            long compacted = Math.round(rows * rs.getDouble("compacted_fraction"));
+            fullRows.set(rows - compacted);
+            compactedRows.set(compacted);
+            tableBytes.set(rs.getLong("table_bytes"));
+            indexBytes.set(rs.getLong("index_bytes"));
+        });
+    }
+
+    /**
+     * Result of one compaction batch.
+     *
+     * @param scanned       number of candidates read
+     * @param compacted     number of candidates compacted
+     * @param lastGrantedAt granted_at of the last candidate read, the cursor of the next batch
+     * @param lastId        id of the last candidate read
+     */
+    private record Batch(int scanned, int compacted, Timestamp lastGrantedAt, UUID lastId) {
+    }
+}
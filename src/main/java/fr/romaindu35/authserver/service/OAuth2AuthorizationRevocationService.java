@@ -1,13 +1,13 @@
 package fr.romaindu35.authserver.service;
 
 import fr.romaindu35.authserver.dto.AuthorizationEventDTO;
+import fr.romaindu35.authserver.dto.AuthorizationEventPageDTO;
 import fr.romaindu35.authserver.dto.AuthorizationEventType;
 import fr.romaindu35.authserver.entity.OAuth2AuthorizationHistory;
-import fr.romaindu35.authserver.entity.OAuth2Client;
 import fr.romaindu35.authserver.entity.User;
 import fr.romaindu35.authserver.repository.OAuth2AuthorizationHistoryRepository;
-import fr.romaindu35.authserver.repository.OAuth2ClientRepository;
 import fr.romaindu35.authserver.repository.UserRepository;
+import fr.romaindu35.authserver.utils.KeysetCursor;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.jdbc.core.JdbcTemplate;
@@ -15,7 +15,6 @@ import org.springframework.security.oauth2.server.authorization.JdbcOAuth2Author
 import org.springframework.security.oauth2.server.authorization.OAuth2Authorization;
 import org.springframework.security.oauth2.server.authorization.OAuth2AuthorizationCode;
 import org.springframework.security.oauth2.server.authorization.OAuth2AuthorizationConsent;
-import org.springframework.security.oauth2.server.authorization.OAuth2AuthorizationConsentService;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Instant;
@@ -34,13 +33,21 @@ import java.util.UUID;
 @RequiredArgsConstructor
 public class OAuth2AuthorizationRevocationService {
 
+    /**
+     * Number of history entries read per page of the event timeline.
+     */
+    public static final int EVENTS_PAGE_SIZE = 20;
+
     private final OAuth2AuthorizationHistoryRepository authorizationHistoryRepository;
     // Use specific JDBC service to avoid circular dependency with TrackingService
     private final JdbcOAuth2AuthorizationService authorizationService;
-    private final OAuth2AuthorizationConsentService authorizationConsentService;
+    private final CachingOAuth2AuthorizationConsentService authorizationConsentService;
     private final JdbcTemplate jdbcTemplate;
     private final UserRepository userRepository;
-    private final OAuth2ClientRepository clientRepository;
+    private final ClientDisplayCache clientDisplayCache;
+    private final AuthorizationLockService authorizationLockService;
+    private final SessionCounterService sessionCounterService;
+    private final UserAgentDictionary userAgentDictionary;
 
     /**
      * Revokes an authorization for a specific user and client (Manual User Action).
@@ -52,6 +59,7 @@ public class OAuth2AuthorizationRevocationService {
     @Transactional
     public boolean revokeAuthorization(UUID userId, UUID clientId) {
         log.info("Manual revocation requested for user {} and client {}", userId, clientId);
+        authorizationLockService.lockPair(userId, clientId);
 
         // 1. Mark History as REVOKED
         Optional<OAuth2AuthorizationHistory> activeAuth =
@@ -62,6 +70,11 @@ public class OAuth2AuthorizationRevocationService {
             authorizationHistory.markAsRevoked();
             authorizationHistoryRepository.save(authorizationHistory);
             log.info("Authorization history marked as revoked.");
+            // Doublons actifs éventuels : archivés, pour ne pas afficher plusieurs révocations
+            int duplicates = authorizationHistoryRepository.archiveActive(userId, clientId);
+            if (duplicates > 0) {
+                log.warn("Archived {} duplicate active history entries for user {} and client {}", duplicates, userId, clientId);
+            }
         } else {
             log.warn("No active authorization history found to revoke.");
         }
@@ -72,6 +85,8 @@ public class OAuth2AuthorizationRevocationService {
 
         // 3. Remove Consent
         User user = userRepository.findById(userId).orElseThrow();
+        // The cached entry may come from before a consent granted on another node: read the table
+        authorizationConsentService.invalidate(clientId.toString(), user.getUsername());
         OAuth2AuthorizationConsent consent = authorizationConsentService.findById(clientId.toString(), user.getUsername());
         if (consent != null) {
             authorizationConsentService.remove(consent);
@@ -104,6 +119,7 @@ public class OAuth2AuthorizationRevocationService {
         List<String> authorizationIds = jdbcTemplate.queryForList(findIdsSql, String.class, user.getUsername(), clientId.toString(), excludedAuthorizationId);
 
         int invalidatedCount = 0;
+        int invalidatedLiveSessions = 0;
         for (String authId : authorizationIds) {
             log.info("Invalidating tokens for authorization ID {}", authId);
 
@@ -112,6 +128,7 @@ public class OAuth2AuthorizationRevocationService {
 
             OAuth2Authorization.Builder builder = OAuth2Authorization.from(authorization);
             boolean modified = false;
+            boolean wasLive = SessionCounterService.isLive(authorization);
 
             // Invalidate Access Token
             if (authorization.getAccessToken() != null && !authorization.getAccessToken().isInvalidated()) {
@@ -138,46 +155,63 @@ public class OAuth2AuthorizationRevocationService {
             if (modified) {
                 authorizationService.save(builder.build());
                 invalidatedCount++;
+                if (wasLive) {
+                    invalidatedLiveSessions++;
+                }
             }
         }
+        // This JDBC service bypasses the tracking decorator, so the session counter is adjusted here
+        sessionCounterService.adjust(user.getUsername(), clientId.toString(), -invalidatedLiveSessions);
         return invalidatedCount;
     }
 
     /**
-     * Gets the authorization events for a specific user and client.
+     * Gets one page of the authorization events for a specific user and client, most recent first.
      * Transforms raw authorization history into typed events (AUTHORIZATION, SCOPE_ADDITION, REVOCATION).
-     * Each event contains all metadata and is properly typed for frontend consumption.
+     * History is read newest-first through the (user_id, client_id, granted_at DESC) index, one fixed-size page at a time.
+     * The type of each entry only depends on its older neighbour, so one extra row is fetched to classify the last entry
+     * of the page (and to know whether another page exists).
+     * Compacted entries take their metadata from the nearest newer non-compacted entry: the page is read newest-first,
+     * so it is the last non-compacted entry seen, and at most one extra lookup is needed when the page starts inside a
+     * compacted chain.
      *
      * @param userId   the user's UUID
      * @param clientId the OAuth2 client ID
-     * @return List of authorization events sorted by timestamp DESC (most recent first)
+     * @param cursor   cursor returned with the previous page, null for the first page
+     * @return Page of authorization events sorted by timestamp DESC (most recent first)
      */
-    public List<AuthorizationEventDTO> getAuthorizationEvents(UUID userId, UUID clientId) {
-        log.debug("Getting authorization events for user {} and client {}", userId, clientId);
+    @Transactional(readOnly = true)
+    public AuthorizationEventPageDTO getAuthorizationEvents(UUID userId, UUID clientId, String cursor) {
+        log.debug("Getting authorization events for user {} and client {} (cursor {})", userId, clientId, cursor);
 
-        // Récupérer l'historique complet pour ce user-client
-        List<OAuth2AuthorizationHistory> history =
-                authorizationHistoryRepository.findByUserIdAndClientIdOrderByGrantedAtAsc(userId, clientId);
+        List<OAuth2AuthorizationHistory> history;
+        if (cursor == null || cursor.isBlank()) {
+            history = authorizationHistoryRepository.findTimelineHead(userId, clientId, EVENTS_PAGE_SIZE + 1);
+        } else {
+            KeysetCursor position = KeysetCursor.decode(cursor);
+            history = authorizationHistoryRepository.findTimelinePageBefore(
+                    userId, clientId, position.sortKey(), position.id(), EVENTS_PAGE_SIZE + 1);
+        }
 
         if (history.isEmpty()) {
             log.debug("No authorization history found for user {} and client {}", userId, clientId);
-            return List.of();
+            return new AuthorizationEventPageDTO(List.of(), null);
         }
 
         // Récupérer les informations du client
-        OAuth2Client client = clientRepository.findById(clientId).orElse(null);
-        String clientName = client != null ? client.getClientName() : "Client inconnu";
-
-        // Transformer l'historique en événements
-        List<AuthorizationEventDTO> events = new ArrayList<>();
-        boolean nextIsScopeAddition = false;
-        // Parcourir l'historique en ordre ASC (plus vieux en premier). On viendra inverser à la fin. Ce choix est réalisé afin de plus facilement gérer l'ajout de scopes.
-        for (OAuth2AuthorizationHistory historyItem : history) {
-            if (!nextIsScopeAddition) {
-                events.add(createEventDTO(historyItem, AuthorizationEventType.AUTHORIZATION, historyItem.getGrantedAt(), historyItem.getAuthorizedScopes(), clientName));
-            } else {
-                events.add(createEventDTO(historyItem, AuthorizationEventType.SCOPE_ADDITION, historyItem.getGrantedAt(), historyItem.getAuthorizedScopes(), clientName));
-            }
+        String clientName = clientDisplayCache.findById(clientId)
+                .map(ClientDisplayCache.ClientDisplay::clientName)
+                .orElse("Client inconnu");
+
+        int pageSize = Math.min(history.size(), EVENTS_PAGE_SIZE);
+        List<AuthorizationEventDTO> events = new ArrayList<>(pageSize * 2);
+        // Dernière entrée non compactée rencontrée : source des métadonnées des entrées compactées qui suivent
+        OAuth2AuthorizationHistory metadataSource = null;
+        // Parcourir l'historique en ordre DESC (plus récent en premier).
+        for (int i = 0; i < pageSize; i++) {
+            OAuth2AuthorizationHistory historyItem = history.get(i);
+            OAuth2AuthorizationHistory olderItem = i + 1 < history.size() ? history.get(i + 1) : null;
+
             if (historyItem.getRevokedAt() != null) {
                 // Sur les événements révoqués, on d'indique pas l'ip, le navigateur, etc.
                 events.add(new AuthorizationEventDTO(
@@ -190,26 +224,46 @@ public class OAuth2AuthorizationRevocationService {
                         null, null, null, null, null, null
                 ));
             }
-            // Si révoqué et nul, alors il s'agit d'un changement de scope
-            nextIsScopeAddition = historyItem.getRevokedAt() == null && !historyItem.isActive();
+            // Si l'entrée précédente est inactive sans révocation, alors il s'agit d'un changement de scope
+            boolean isScopeAddition = olderItem != null && olderItem.getRevokedAt() == null && !olderItem.isActive();
+            AuthorizationEventType eventType = isScopeAddition ? AuthorizationEventType.SCOPE_ADDITION : AuthorizationEventType.AUTHORIZATION;
+
+            if (!historyItem.isCompacted()) {
+                metadataSource = historyItem;
+            } else if (metadataSource == null) {
+                // La page commence au milieu d'une chaîne compactée : la source est sur une page précédente
+                metadataSource = authorizationHistoryRepository.findMetadataSource(
+                        userId, clientId, historyItem.getGrantedAt(), historyItem.getId()).orElse(historyItem);
+            }
+            events.add(createEventDTO(historyItem, metadataSource, eventType, historyItem.getGrantedAt(), historyItem.getAuthorizedScopes(), clientName));
+        }
+
+        String nextCursor = null;
+        if (history.size() > EVENTS_PAGE_SIZE) {
+            OAuth2AuthorizationHistory last = history.get(pageSize - 1);
+            nextCursor = new KeysetCursor(last.getGrantedAt(), last.getId()).encode();
         }
 
         log.debug("Transformed {} history entries into {} events for user {} and client {}",
-                history.size(), events.size(), userId, clientId);
+                pageSize, events.size(), userId, clientId);
 
-        return events.reversed();
+        return new AuthorizationEventPageDTO(events, nextCursor);
     }
 
     /**
      * Helper method to create an AuthorizationEventDTO from an authorization history entry.
+     * Request metadata is read from metadataSource, which is the entry itself unless it is compacted.
+     * Browser, device type and OS are resolved from the user agent dictionary.
      */
     private AuthorizationEventDTO createEventDTO(
             OAuth2AuthorizationHistory auth,
+            OAuth2AuthorizationHistory metadataSource,
             AuthorizationEventType eventType,
             Instant timestamp,
             Set<String> scopes,
             String clientName) {
 
+        UserAgentDictionary.Entry userAgent = userAgentDictionary.resolve(metadataSource.getUserAgentId());
         return new AuthorizationEventDTO(
                 auth.getId(),
                 eventType,
@@ -217,12 +271,12 @@ public class OAuth2AuthorizationRevocationService {
                 scopes,
                 auth.getClientId(),
                 clientName,
-                auth.getIpAddress() != null ? auth.getIpAddress().getHostAddress() : null,
-                auth.getBrowser(),
-                auth.getDeviceType(),
-                auth.getOs(),
-                auth.getCountry() != null ? auth.getCountry() : "Inconnu",
-                auth.getCity() != null ? auth.getCity() : "Inconnu"
+                metadataSource.getIpAddress() != null ? metadataSource.getIpAddress().getHostAddress() : null,
+                userAgent != null ? userAgent.browser() : null,
+                userAgent != null ? userAgent.deviceType() : null,
+                userAgent != null ? userAgent.os() : null,
+                metadataSource.getCountry() != null ? metadataSource.getCountry() : "Inconnu",
+                metadataSource.getCity() != null ? metadataSource.getCity() : "Inconnu"
         );
     }
 }
\ No newline at end of file
@@ -1,18 +1,19 @@
 package fr.romaindu35.authserver.service;
 
+import fr.romaindu35.authserver.auth.service.AuthenticatedUser;
+import fr.romaindu35.authserver.auth.service.AuthenticatedUserService;
 import fr.romaindu35.authserver.entity.OAuth2AuthorizationHistory;
 import fr.romaindu35.authserver.entity.OAuth2Client;
-import fr.romaindu35.authserver.entity.User;
 import fr.romaindu35.authserver.repository.OAuth2AuthorizationHistoryRepository;
-import fr.romaindu35.authserver.repository.OAuth2ClientRepository;
-import fr.romaindu35.authserver.repository.UserRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.security.core.Authentication;
 import org.springframework.security.oauth2.core.AuthorizationGrantType;
 import org.springframework.security.oauth2.server.authorization.OAuth2Authorization;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.security.Principal;
 import java.time.Instant;
 import java.util.HashSet;
 import java.util.Optional;
@@ -30,9 +31,10 @@ public class OAuth2AuthorizationTrackingService {
 
     private final OAuth2AuthorizationHistoryRepository authorizationHistoryRepository;
     private final RequestMetadataExtractor requestMetadataExtractor;
-    private final UserRepository userRepository;
-    private final OAuth2ClientRepository clientRepository;
+    private final AuthenticatedUserService authenticatedUserService;
+    private final ClientDisplayCache clientDisplayCache;
     private final OAuth2AuthorizationRevocationService revocationService;
+    private final AuthorizationLockService authorizationLockService;
 
     /**
      * Enforces single session policy for SERVER (Confidential) clients.
@@ -56,16 +58,20 @@ public class OAuth2AuthorizationTrackingService {
         if (authorization.getAccessToken() == null) return;
 
         UUID clientId = UUID.fromString(authorization.getRegisteredClientId());
-        OAuth2Client client = clientRepository.findById(clientId).orElse(null);
+        boolean serverClient = clientDisplayCache.findById(clientId)
+                .map(client -> client.type() == OAuth2Client.ClientType.SERVER)
+                .orElse(false);
 
-        if (client != null && client.getClientType() == OAuth2Client.ClientType.SERVER) {
+        if (serverClient) {
             String principalName = authorization.getPrincipalName();
-            userRepository.findByUsername(principalName).ifPresent(user -> {
+            resolveUser(authorization).ifPresent(user -> {
+                // Serialize with any concurrent login of the same user to the same client
+                authorizationLockService.lockPair(user.userId(), clientId);
                 log.info("Enforcing single session for user {} and client {} (keep authorization {})", principalName, clientId, authorization.getId());
                 // We revoke ALL previous sessions found in history.
                 // Since this is a NEW login (checked above), we are safe.
                 // We pass the CURRENT authorization ID to exclude it from invalidation (safeguard).
-                revocationService.invalidateAllTokens(user.getId(), clientId, authorization.getId());
+                revocationService.invalidateAllTokens(user.userId(), clientId, authorization.getId());
             });
         }
     }
@@ -109,40 +115,40 @@ public class OAuth2AuthorizationTrackingService {
         UUID clientId = UUID.fromString(authorization.getRegisteredClientId());
         Set<String> scopes = authorization.getAuthorizedScopes();
 
-        User user = userRepository.findByUsername(principalName)
+        UUID userId = resolveUser(authorization)
+                .map(AuthenticatedUser::userId)
                 .orElseThrow(() -> new IllegalStateException("User not found: " + principalName));
 
+        // Held until commit: a concurrent login of the same pair waits here instead of archiving the same row
+        authorizationLockService.lockPair(userId, clientId);
+
         // Archive any PREVIOUS active history for this user/client
         // (This handles the visual "History" list in frontend)
-        Optional<OAuth2AuthorizationHistory> existingAuth =
-                authorizationHistoryRepository.findByUserIdAndClientIdAndIsActiveTrue(user.getId(), clientId);
-
-        if (existingAuth.isPresent()) {
-            OAuth2AuthorizationHistory existing = existingAuth.get();
-            log.info("New login detected for user {} and client {}. Archiving old session.", user.getId(), clientId);
-            existing.markAsInactive();
-            authorizationHistoryRepository.save(existing);
+        int archived = authorizationHistoryRepository.archiveActive(userId, clientId);
+        if (archived > 0) {
+            log.info("New login detected for user {} and client {}. Archived {} old session(s).", userId, clientId, archived);
+        }
+        if (archived > 1) {
+            log.warn("User {} had {} active history entries for client {}", userId, archived, clientId);
         }
 
-        createNewHistory(user, clientId, scopes, authorization.getId());
+        createNewHistory(userId, clientId, scopes, authorization.getId());
     }
 
-    private void createNewHistory(User user, UUID clientId, Set<String> scopes, String authorizationId) {
+    private void createNewHistory(UUID userId, UUID clientId, Set<String> scopes, String authorizationId) {
         try {
             RequestMetadataExtractor.RequestMetadata metadata = requestMetadataExtractor.extract();
 
             OAuth2AuthorizationHistory history = OAuth2AuthorizationHistory.builder()
-                    .userId(user.getId())
+                    .userId(userId)
                     .clientId(clientId)
                     .authorizedScopes(new HashSet<>(scopes))
                     .authorizationId(authorizationId) // Link to Spring ID
                     .ipAddress(metadata.ipAddress())
-                    .userAgent(metadata.userAgent())
-                    .browser(metadata.browser())
-                    .deviceType(metadata.deviceType())
-                    .os(metadata.os())
+                    .userAgentId(metadata.userAgentId())
                     .country(metadata.country())
                     .city(metadata.city())
+                    .geoDatabaseBuild(metadata.geoDatabaseBuild())
                     .grantedAt(Instant.now())
                     .isActive(true)
                     .build();
@@ -152,4 +158,16 @@ public class OAuth2AuthorizationTrackingService {
             log.warn("Failed to extract metadata or save history", e);
         }
     }
+
+    /**
+     * Resolves the user of an authorization from its principal, without a users lookup when the principal is an
+     * {@link AuthenticatedUser}.
+     */
+    private Optional<AuthenticatedUser> resolveUser(OAuth2Authorization authorization) {
+        Authentication principal = authorization.getAttribute(Principal.class.getName());
+        if (principal == null) {
+            return authenticatedUserService.findByUsername(authorization.getPrincipalName());
+        }
+        return authenticatedUserService.resolve(principal);
+    }
 }
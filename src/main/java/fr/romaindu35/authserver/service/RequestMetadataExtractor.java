@@ -1,6 +1,5 @@
 package fr.romaindu35.authserver.service;
 
-import eu.bitwalker.useragentutils.UserAgent;
 import jakarta.servlet.http.HttpServletRequest;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -8,16 +7,16 @@ import org.springframework.stereotype.Service;
 import org.springframework.web.context.annotation.RequestScope;
 
 import java.net.InetAddress;
-import java.net.UnknownHostException;
+import java.time.Instant;
 
 /**
  * Service for extracting metadata from HTTP requests.
  * This service is request-scoped to have access to the current HttpServletRequest.
  *
  * Extracts:
- * - IP address (from headers or remote address)
- * - User-Agent details (browser, device type, OS)
- * - Geolocation (country, city) via GeoLocationService
+ * - IP address (remote address, or forwarded chain behind trusted proxies, see ClientIpResolver)
+ * - User-Agent details (browser, device type, OS), interned in the UserAgentDictionary
+ * - Geolocation (country, city) via GeoLocationService, unless it is deferred to the GeoEnrichmentService
  */
 @Service
 @RequestScope
@@ -26,84 +25,50 @@ import java.net.UnknownHostException;
 public class RequestMetadataExtractor {
 
     private final HttpServletRequest request;
+    private final ClientIpResolver clientIpResolver;
     private final GeoLocationService geoLocationService;
+    private final UserAgentDictionary userAgentDictionary;
+    private final GeoEnrichmentService geoEnrichmentService;
 
     /**
      * Extracts all metadata from the current HTTP request.
      *
      * @return RequestMetadata containing IP, user-agent details, and geolocation
      */
-    public RequestMetadata extract() throws UnknownHostException {
-        String ipAddress = extractIpAddress();
+    public RequestMetadata extract() {
+        // Parsed once, then shared by geolocation and the history entry
+        InetAddress ipAddress = clientIpResolver.resolve(request);
         String userAgent = extractUserAgent();
 
-        // Parse user agent details
-        UserAgent ua = UserAgent.parseUserAgentString(userAgent);
-        String browser = ua.getBrowser() != null ? ua.getBrowser().getName() : null;
-        String deviceType = ua.getOperatingSystem() != null ?
-                ua.getOperatingSystem().getDeviceType().getName() : null;
-        String os = ua.getOperatingSystem() != null ?
-                ua.getOperatingSystem().getName() : null;
+        // User agent details, parsed only the first time this user agent is seen
+        UserAgentDictionary.Entry ua = userAgentDictionary.intern(userAgent);
 
-        // Get geolocation
-        GeoLocationService.LocationInfo location = geoLocationService.getLocationFromIp(ipAddress);
+        // Get geolocation, or leave it to the background enrichment worker
+        GeoLocationService.LocationInfo location;
+        Instant geoDatabaseBuild;
+        if (geoEnrichmentService.isDeferred()) {
+            location = new GeoLocationService.LocationInfo(null, null);
+            geoDatabaseBuild = null;
+        } else {
+            geoDatabaseBuild = geoLocationService.getDatabaseBuild();
+            location = geoLocationService.getLocationFromIp(ipAddress);
+        }
 
         log.debug("Extracted request metadata: IP={}, Browser={}, Device={}, OS={}, Country={}, City={}",
-                ipAddress, browser, deviceType, os, location.country(), location.city());
+                ipAddress, ua.browser(), ua.deviceType(), ua.os(), location.country(), location.city());
 
         return new RequestMetadata(
-                InetAddress.getByName(ipAddress),
-                userAgent,
-                browser,
-                deviceType,
-                os,
+                ipAddress,
+                ua.id(),
+                ua.browser(),
+                ua.deviceType(),
+                ua.os(),
                 location.country(),
-                location.city()
+                location.city(),
+                geoDatabaseBuild
         );
     }
 
-    /**
-     * Extracts the client's IP address from the request.
-     * Checks multiple headers in order: X-Forwarded-For, X-Real-IP, Proxy-Client-IP,
-     * WL-Proxy-Client-IP, and falls back to remote address.
-     *
-     * @return the client's IP address
-     */
-    private String extractIpAddress() {
-        String[] headerNames = {
-                "X-Forwarded-For",
-                "X-Real-IP",
-                "Proxy-Client-IP",
-                "WL-Proxy-Client-IP",
-                "HTTP_X_FORWARDED_FOR",
-                "HTTP_X_FORWARDED",
-                "HTTP_X_CLUSTER_CLIENT_IP",
-                "HTTP_CLIENT_IP",
-                "HTTP_FORWARDED_FOR",
-                "HTTP_FORWARDED",
-                "HTTP_VIA",
-                "REMOTE_ADDR"
-        };
-
-        for (String header : headerNames) {
-            String ip = request.getHeader(header);
-            if (ip != null && !ip.isBlank() && !"unknown".equalsIgnoreCase(ip)) {
-                // X-Forwarded-For can contain multiple IPs (client, proxy1, proxy2)
-                // The first one is the original client
-                if (ip.contains(",")) {
-                    ip = ip.split(",")[0].trim();
-                }
-                log.debug("IP address extracted from header {}: {}", header, ip);
-                return ip;
-            }
-        }
-
-        // Fallback to remote address
-        String remoteAddr = request.getRemoteAddr();
-        log.debug("IP address extracted from remote address: {}", remoteAddr);
-        return remoteAddr;
-    }
-
     /**
      * Extracts the User-Agent header from the request.
      *
@@ -118,22 +83,24 @@ public class RequestMetadataExtractor {
      * Immutable record containing metadata extracted from an HTTP request.
      * Used for tracking authorization grants with device and location information.
      *
-     * @param ipAddress the client's IP address (from X-Forwarded-For, X-Real-IP, or remote address)
-     * @param userAgent the full User-Agent header string
+     * @param ipAddress the client's IP address (remote address, or first untrusted hop of the forwarded chain)
+     * @param userAgentId the id of the User-Agent header in the user_agent_dictionary table
      * @param browser the browser name (e.g., "Chrome", "Firefox")
      * @param deviceType the device type (e.g., "Computer", "Mobile", "Tablet")
      * @param os the operating system (e.g., "Windows 10", "Android")
      * @param country the country name from geolocation (may be null)
      * @param city the city name from geolocation (may be null)
+     * @param geoDatabaseBuild build date of the GeoIP database used (null if geolocation is pending)
      */
     public record RequestMetadata(
             InetAddress ipAddress,
-            String userAgent,
+            int userAgentId,
             String browser,
             String deviceType,
             String os,
             String country,
-            String city
+            String city,
+            Instant geoDatabaseBuild
     ) {
     }
 }
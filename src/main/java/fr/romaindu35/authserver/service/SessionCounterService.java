@@ -0,0 +1,206 @@
+package fr.romaindu35.authserver.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.oauth2.core.OAuth2RefreshToken;
+import org.springframework.security.oauth2.server.authorization.OAuth2Authorization;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+/**
+ * Maintains the session_counter table: number of live refresh tokens per (user, client) pair.
+ * Counters are adjusted incrementally by the authorization save, remove, invalidation and purge paths,
+ * so reading a session count is a primary-key lookup. A periodic reconciliation corrects any drift
+ * (e.g. concurrent updates racing with a reconciliation).
+ *
+ * A refresh token is live while it is stored and not invalidated: an expired token stays counted until the purge
+ * deletes it. Every path (incremental, purge, reconciliation, display) uses this same definition, so a token is never
+ * subtracted twice. The purge empties the whole backlog of expired tokens on each run, so a session count includes
+ * expired tokens for at most one purge interval.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class SessionCounterService {
+
+    // SKIP LOCKED : plusieurs nœuds purgent en parallèle des lots distincts sans s'attendre
+    private static final String PURGE_BATCH_SQL = """
+            WITH purged AS (
+                DELETE FROM oauth2_authorization
+                WHERE id IN (
+                    SELECT id FROM oauth2_authorization
+                    WHERE refresh_token_expires_at < CURRENT_TIMESTAMP
+                    LIMIT ?
+                    FOR UPDATE SKIP LOCKED
+                )
+                RETURNING principal_name, registered_client_id, refresh_token_expires_at, refresh_token_metadata
+            ), decrements AS (
+                SELECT principal_name, registered_client_id, COUNT(*) AS purged_count
+                FROM purged
+                WHERE %s
+                GROUP BY principal_name, registered_client_id
+            ), decremented AS (
+                UPDATE session_counter s
+                SET active_count = GREATEST(0, s.active_count - d.purged_count),
+                    updated_at = CURRENT_TIMESTAMP
+                FROM decrements d
+                WHERE s.principal_name = d.principal_name
+                  AND s.client_id::text = d.registered_client_id
+                RETURNING 1
+            )
+            SELECT (SELECT COUNT(*) FROM purged) AS purged,
+                   (SELECT COUNT(*) FROM decremented) AS decremented_counters
+            """.formatted(liveRefreshTokenPredicate(""));
+
+    private static final RowMapper<PurgeBatch> PURGE_BATCH_MAPPER = (rs, rowNum) -> new PurgeBatch(
+            rs.getInt("purged"),
+            rs.getInt("decremented_counters")
+    );
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${yoxo.session-counter.purge-batch-size}")
+    private int purgeBatchSize;
+
+    /**
+     * Checks whether an authorization is counted as a live session.
+     *
+     * @param authorization the authorization to check
+     * @return true if it holds a refresh token that is not invalidated (expired or not: see the class comment)
+     */
+    public static boolean isLive(OAuth2Authorization authorization) {
+        OAuth2Authorization.Token<OAuth2RefreshToken> refreshToken = authorization.getRefreshToken();
+        return refreshToken != null && !refreshToken.isInvalidated();
+    }
+
+    /**
+     * Checks whether the stored version of an authorization is currently counted as a live session.
+     * Used before a save or remove to compute the counter delta.
+     *
+     * @param authorizationId the Spring authorization ID
+     * @return true if the authorization exists in database and holds a live refresh token
+     */
+    public boolean isStoredLive(String authorizationId) {
+        List<Boolean> live = jdbcTemplate.queryForList(
+                "SELECT " + liveRefreshTokenPredicate("") + " FROM oauth2_authorization WHERE id = ?",
+                Boolean.class, authorizationId);
+        return !live.isEmpty() && Boolean.TRUE.equals(live.getFirst());
+    }
+
+    /**
+     * Applies the counter change implied by an authorization moving from one liveness state to another.
+     *
+     * @param authorization the authorization (provides principal and client)
+     * @param wasLive       liveness before the operation
+     * @param isLive        liveness after the operation
+     */
+    @Transactional
+    public void applyTransition(OAuth2Authorization authorization, boolean wasLive, boolean isLive) {
+        if (wasLive != isLive) {
+            adjust(authorization.getPrincipalName(), authorization.getRegisteredClientId(), isLive ? 1 : -1);
+        }
+    }
+
+    /**
+     * Adds a delta to the counter of a (user, client) pair, creating it if needed.
+     * The counter never goes below zero; any remaining drift is fixed by the reconciliation.
+     *
+     * @param principalName      the user's username
+     * @param registeredClientId the OAuth2 client ID
+     * @param delta              the value to add (may be negative)
+     */
+    @Transactional
+    public void adjust(String principalName, String registeredClientId, int delta) {
+        if (delta == 0) {
+            return;
+        }
+        jdbcTemplate.update("""
+                INSERT INTO session_counter (principal_name, client_id, active_count, updated_at)
+                VALUES (?, ?::uuid, GREATEST(0, ?), CURRENT_TIMESTAMP)
+                ON CONFLICT (principal_name, client_id) DO UPDATE
+                SET active_count = GREATEST(0, session_counter.active_count + ?),
+                    updated_at = CURRENT_TIMESTAMP
+                """, principalName, registeredClientId, delta, delta);
+    }
+
+    /**
+     * Deletes authorizations whose refresh token has expired, decrementing the counters
+     * of those that were still counted as live. Runs batch after batch until no expired authorization is left,
+     * each batch being a single autocommitted statement, so the counters catch up with expiry on every run.
+     */
+    @Scheduled(fixedDelayString = "${yoxo.session-counter.purge-interval}", initialDelayString = "${yoxo.session-counter.purge-interval}")
+    public void purgeExpiredAuthorizations() {
+        long purged = 0;
+        long decremented = 0;
+        PurgeBatch batch;
+        do {
+            batch = jdbcTemplate.queryForObject(PURGE_BATCH_SQL, PURGE_BATCH_MAPPER, purgeBatchSize);
+            purged += batch.purged();
+            decremented += batch.decrementedCounters();
+        } while (batch.purged() >= purgeBatchSize && !Thread.currentThread().isInterrupted());
+
+        if (purged > 0) {
+            log.debug("Purged {} expired authorizations, {} session counters decremented", purged, decremented);
+        }
+    }
+
+    /**
+     * Recomputes every counter from oauth2_authorization and fixes the ones that drifted.
+     */
+    @Scheduled(fixedDelayString = "${yoxo.session-counter.reconcile-interval}", initialDelayString = "${yoxo.session-counter.reconcile-interval}")
+    @Transactional
+    public void reconcile() {
+        int corrected = jdbcTemplate.update("""
+                INSERT INTO session_counter (principal_name, client_id, active_count, updated_at)
+                SELECT a.principal_name, c.id, COUNT(*), CURRENT_TIMESTAMP
+                FROM oauth2_authorization a
+                JOIN oauth2_client c ON c.id::text = a.registered_client_id
+                WHERE %s
+                GROUP BY a.principal_name, c.id
+                ON CONFLICT (principal_name, client_id) DO UPDATE
+                SET active_count = EXCLUDED.active_count,
+                    updated_at = EXCLUDED.updated_at
+                WHERE session_counter.active_count <> EXCLUDED.active_count
+                """.formatted(liveRefreshTokenPredicate("a.")));
+
+        int cleared = jdbcTemplate.update("""
+                DELETE FROM session_counter s
+                WHERE NOT EXISTS (
+                    SELECT 1 FROM oauth2_authorization a
+                    WHERE a.principal_name = s.principal_name
+                      AND a.registered_client_id = s.client_id::text
+                      AND %s
+                )
+                """.formatted(liveRefreshTokenPredicate("a.")));
+
+        if (corrected > 0 || cleared > 0) {
+            log.info("Session counter reconciliation: {} counters corrected, {} stale counters removed", corrected, cleared);
+        }
+    }
+
+    /**
+     * Builds the SQL predicate matching authorizations that hold a live refresh token (stored, not invalidated).
+     *
+     * @param alias table alias prefix (e.g. "a.") or an empty string
+     */
+    private static String liveRefreshTokenPredicate(String alias) {
+        return alias + "refresh_token_expires_at IS NOT NULL AND (" +
+                alias + "refresh_token_metadata IS NULL OR " +
+                alias + "refresh_token_metadata NOT LIKE '%\"metadata.token.invalidated\":true%')";
+    }
+
+    /**
+     * Result of one purge batch.
+     *
+     * @param purged              number of authorizations deleted
+     * @param decrementedCounters number of session counters decremented
+     */
+    private record PurgeBatch(int purged, int decrementedCounters) {
+    }
+}
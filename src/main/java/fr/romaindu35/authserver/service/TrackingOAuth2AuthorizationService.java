@@ -16,13 +16,17 @@ public class TrackingOAuth2AuthorizationService implements OAuth2AuthorizationSe
 
     private final OAuth2AuthorizationService delegate;
     private final OAuth2AuthorizationTrackingService trackingService;
+    private final SessionCounterService sessionCounterService;
 
     public TrackingOAuth2AuthorizationService(OAuth2AuthorizationService delegate,
-                                              OAuth2AuthorizationTrackingService trackingService) {
+                                              OAuth2AuthorizationTrackingService trackingService,
+                                              SessionCounterService sessionCounterService) {
         Assert.notNull(delegate, "delegate cannot be null");
         Assert.notNull(trackingService, "trackingService cannot be null");
+        Assert.notNull(sessionCounterService, "sessionCounterService cannot be null");
         this.delegate = delegate;
         this.trackingService = trackingService;
+        this.sessionCounterService = sessionCounterService;
     }
 
     @Override
@@ -33,7 +37,10 @@ public class TrackingOAuth2AuthorizationService implements OAuth2AuthorizationSe
         this.trackingService.enforceSingleSession(authorization);
 
         // 2. Save to database using the standard JDBC service (Critical for integrity)
+        // The stored liveness is read first so the session counter is adjusted by the actual transition.
+        boolean wasLive = this.sessionCounterService.isStoredLive(authorization.getId());
         this.delegate.save(authorization);
+        this.sessionCounterService.applyTransition(authorization, wasLive, SessionCounterService.isLive(authorization));
 
         // 3. Track the authorization activity (Login or Refresh)
         // This handles history creation and activity logging.
@@ -43,7 +50,9 @@ public class TrackingOAuth2AuthorizationService implements OAuth2AuthorizationSe
     @Override
     @Transactional
     public void remove(OAuth2Authorization authorization) {
+        boolean wasLive = this.sessionCounterService.isStoredLive(authorization.getId());
         this.delegate.remove(authorization);
+        this.sessionCounterService.applyTransition(authorization, wasLive, false);
     }
 
     @Nullable
@@ -0,0 +1,193 @@
+package fr.romaindu35.authserver.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import eu.bitwalker.useragentutils.UserAgent;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Interns User-Agent strings into the user_agent_dictionary table.
+ * Each distinct User-Agent is parsed and stored once; history entries only reference its id.
+ * A User-Agent is identified by the SHA-256 of its full text, so two long User-Agents sharing their first
+ * {@link #MAX_USER_AGENT_LENGTH} characters get distinct entries; only the stored text is truncated.
+ * Entries are immutable, so both directions (User-Agent to entry, id to entry) are cached in memory.
+ * Both caches are size-bounded (rarely used entries are evicted first) and expose their hit ratio as metrics.
+ * UserAgentUtils' parsing only runs for a User-Agent that is not in the table yet.
+ */
+@Service
+@Slf4j
+public class UserAgentDictionary {
+
+    /**
+     * Maximum length of a stored User-Agent; longer values are truncated when stored (not when identified).
+     */
+    public static final int MAX_USER_AGENT_LENGTH = 255;
+
+    private static final String FIND_BY_HASH_SQL =
+            "SELECT id, user_agent, browser, device_type, os FROM user_agent_dictionary WHERE user_agent_hash = ?";
+
+    private static final RowMapper<Entry> ENTRY_ROW_MAPPER = (rs, rowNum) -> new Entry(
+            rs.getInt("id"),
+            rs.getString("user_agent"),
+            rs.getString("browser"),
+            rs.getString("device_type"),
+            rs.getString("os")
+    );
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // Clé : SHA-256 hexadécimal du User-Agent complet
+    private final Cache<String, Entry> byUserAgent;
+    private final Cache<Integer, Entry> byId;
+
+    public UserAgentDictionary(JdbcTemplate jdbcTemplate,
+                               MeterRegistry meterRegistry,
+                               @Value("${yoxo.user-agent.cache-size}") long cacheSize) {
+        this.jdbcTemplate = jdbcTemplate;
+
+        // Quelques centaines de User-Agents couvrent l'essentiel du trafic : la borne protège des User-Agents forgés
+        this.byUserAgent = Caffeine.newBuilder().maximumSize(cacheSize).recordStats().build();
+        this.byId = Caffeine.newBuilder().maximumSize(cacheSize).recordStats().build();
+        CaffeineCacheMetrics.monitor(meterRegistry, byUserAgent, "userAgentDictionary", "direction", "byUserAgent");
+        CaffeineCacheMetrics.monitor(meterRegistry, byId, "userAgentDictionary", "direction", "byId");
+    }
+
+    /**
+     * Returns the dictionary entry of a User-Agent, parsing and storing it on first sight.
+     *
+     * @param userAgent the raw User-Agent header
+     * @return the interned entry
+     */
+    public Entry intern(String userAgent) {
+        String hash = sha256(userAgent);
+        Entry cached = byUserAgent.getIfPresent(hash);
+        if (cached != null) {
+            return cached;
+        }
+
+        // Not loaded through Cache.get(key, loader): the loader runs inside a synchronized map bin, and a JDBC call
+        // there would pin the carrier of a virtual thread. Concurrent misses are resolved by ON CONFLICT instead.
+        // The lookup runs in the caller's transaction (token issuance), on its connection: a separate transaction
+        // would hold a second connection of the same pool during the issuance.
+        Interned interned = findOrInsert(hash, userAgent);
+        Entry entry = interned.entry();
+        if (interned.inserted() && TransactionSynchronizationManager.isSynchronizationActive()) {
+            // A cached id must never point to a row rolled back with the caller's transaction
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    cache(hash, entry);
+                }
+            });
+        } else {
+            cache(hash, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * Resolves a dictionary id back to its entry.
+     *
+     * @param id the dictionary id, may be null
+     * @return the entry, or null if the id is null or unknown
+     */
+    public Entry resolve(Integer id) {
+        if (id == null) {
+            return null;
+        }
+        Entry cached = byId.getIfPresent(id);
+        if (cached != null) {
+            return cached;
+        }
+
+        List<Entry> entries = jdbcTemplate.query(
+                "SELECT id, user_agent, browser, device_type, os FROM user_agent_dictionary WHERE id = ?",
+                ENTRY_ROW_MAPPER, id);
+        if (entries.isEmpty()) {
+            log.warn("Unknown user agent dictionary id: {}", id);
+            return null;
+        }
+        Entry entry = entries.getFirst();
+        byId.put(entry.id(), entry);
+        return entry;
+    }
+
+    private void cache(String hash, Entry entry) {
+        byUserAgent.put(hash, entry);
+        byId.put(entry.id(), entry);
+    }
+
+    private Interned findOrInsert(String hash, String userAgent) {
+        List<Entry> existing = jdbcTemplate.query(FIND_BY_HASH_SQL, ENTRY_ROW_MAPPER, hash);
+        if (!existing.isEmpty()) {
+            return new Interned(existing.getFirst(), false);
+        }
+
+        UserAgent ua = UserAgent.parseUserAgentString(userAgent);
+        String browser = ua.getBrowser() != null ? ua.getBrowser().getName() : null;
+        String deviceType = ua.getOperatingSystem() != null ?
+                ua.getOperatingSystem().getDeviceType().getName() : null;
+        String os = ua.getOperatingSystem() != null ?
+                ua.getOperatingSystem().getName() : null;
+
+        String stored = userAgent.length() > MAX_USER_AGENT_LENGTH ? userAgent.substring(0, MAX_USER_AGENT_LENGTH) : userAgent;
+        List<Entry> inserted = jdbcTemplate.query("""
+                INSERT INTO user_agent_dictionary (user_agent_hash, user_agent, browser, device_type, os)
+                VALUES (?, ?, ?, ?, ?)
+                ON CONFLICT (user_agent_hash) DO NOTHING
+                RETURNING id, user_agent, browser, device_type, os
+                """, ENTRY_ROW_MAPPER, hash, stored, browser, deviceType, os);
+        if (!inserted.isEmpty()) {
+            log.debug("New user agent interned with id {}: {}", inserted.getFirst().id(), userAgent);
+            return new Interned(inserted.getFirst(), true);
+        }
+
+        // Interned by another transaction in the meantime (ON CONFLICT waited for its commit)
+        return new Interned(jdbcTemplate.queryForObject(FIND_BY_HASH_SQL, ENTRY_ROW_MAPPER, hash), false);
+    }
+
+    private static String sha256(String userAgent) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(userAgent.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 is required on every Java platform
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private record Interned(Entry entry, boolean inserted) {
+    }
+
+    /**
+     * A distinct User-Agent and the result of its parsing.
+     *
+     * @param id the dictionary id referenced by history entries
+     * @param userAgent the User-Agent string (truncated to {@link #MAX_USER_AGENT_LENGTH})
+     * @param browser the browser name (e.g., "Chrome", "Firefox")
+     * @param deviceType the device type (e.g., "Computer", "Mobile", "Tablet")
+     * @param os the operating system (e.g., "Windows 10", "Android")
+     */
+    public record Entry(
+            int id,
+            String userAgent,
+            String browser,
+            String deviceType,
+            String os
+    ) {
+    }
+}
@@ -0,0 +1,103 @@
+package fr.romaindu35.authserver.utils;
+
+import java.util.Collection;
+
+/**
+ * Binary prefix trie of IPv4 and IPv6 CIDR blocks.
+ * Built once from the configuration, then read-only: lookups walk at most 32 (IPv4) or 128 (IPv6) nodes,
+ * without allocating, and can be shared between threads.
+ */
+public final class CidrTrie {
+
+    private final Node ipv4Root = new Node();
+    private final Node ipv6Root = new Node();
+
+    private CidrTrie() {
+    }
+
+    /**
+     * Compiles a list of CIDR blocks (e.g. "10.0.0.0/8", "fc00::/7"). A bare address is a block of its full length.
+     *
+     * @param cidrs the blocks to include
+     * @return the compiled trie
+     * @throws IllegalArgumentException if a block is not valid
+     */
+    public static CidrTrie compile(Collection<String> cidrs) {
+        CidrTrie trie = new CidrTrie();
+        IpAddressBits address = new IpAddressBits();
+        for (String raw : cidrs) {
+            String cidr = raw.trim();
+            if (cidr.isEmpty()) {
+                continue;
+            }
+            int slash = cidr.indexOf('/');
+            int addressEnd = slash >= 0 ? slash : cidr.length();
+            if (!address.parse(cidr, 0, addressEnd)) {
+                throw new IllegalArgumentException("Bloc CIDR invalide : " + cidr);
+            }
+            int maxLength = address.isIpv4() ? 32 : 128;
+            int length;
+            try {
+                length = slash >= 0 ? Integer.parseInt(cidr.substring(slash + 1)) : maxLength;
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Bloc CIDR invalide : " + cidr, e);
+            }
+            if (length < 0 || length > maxLength) {
+                throw new IllegalArgumentException("Bloc CIDR invalide : " + cidr);
+            }
+            // An IPv4-mapped IPv6 block covers the IPv4 block it maps
+            if (address.isIpv4() && cidr.indexOf(':') >= 0) {
+                length = Math.max(0, length - 96);
+            }
+            trie.insert(address, length);
+        }
+        return trie;
+    }
+
+    /**
+     * Checks whether an address belongs to one of the blocks.
+     *
+     * @param address the parsed address
+     * @return true if a block contains it
+     */
+    public boolean contains(IpAddressBits address) {
+        Node node = address.isIpv4() ? ipv4Root : ipv6Root;
+        int maxLength = address.isIpv4() ? 32 : 128;
+        for (int i = 0; ; i++) {
+            if (node.terminal) {
+                return true;
+            }
+            if (i == maxLength) {
+                return false;
+            }
+            node = address.bit(i) == 0 ? node.zero : node.one;
+            if (node == null) {
+                return false;
+            }
+        }
+    }
+
+    private void insert(IpAddressBits address, int length) {
+        Node node = address.isIpv4() ? ipv4Root : ipv6Root;
+        for (int i = 0; i < length && !node.terminal; i++) {
+            if (address.bit(i) == 0) {
+                if (node.zero == null) {
+                    node.zero = new Node();
+                }
+                node = node.zero;
+            } else {
+                if (node.one == null) {
+                    node.one = new Node();
+                }
+                node = node.one;
+            }
+        }
+        node.terminal = true;
+    }
+
+    private static final class Node {
+        private Node zero;
+        private Node one;
+        private boolean terminal;
+    }
+}
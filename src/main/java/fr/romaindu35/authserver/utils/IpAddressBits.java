@@ -0,0 +1,251 @@
+package fr.romaindu35.authserver.utils;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * Reusable holder for an IPv4 or IPv6 address as raw bits, filled by parsing a range of characters.
+ * Parsing neither allocates nor resolves host names, so it can be called on every hop of a forwarded chain;
+ * an InetAddress is only built for the address finally kept.
+ * IPv4-mapped IPv6 addresses (::ffff:a.b.c.d) are normalized to IPv4.
+ */
+public final class IpAddressBits {
+
+    private final int[] groups = new int[8];
+    private boolean ipv4;
+    // IPv4: the 32 bits are in the low word. IPv6: 128 bits, most significant half in high.
+    private long high;
+    private long low;
+
+    /**
+     * Parses an IPv4 or IPv6 literal. An IPv6 zone id (%eth0) is ignored.
+     *
+     * @param text  the characters to read
+     * @param start index of the first character (inclusive)
+     * @param end   index of the last character (exclusive)
+     * @return true if the range is a valid address; the holder is then updated
+     */
+    public boolean parse(CharSequence text, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c == ':') {
+                int zone = indexOf(text, '%', i, end);
+                return parseIpv6(text, start, zone >= 0 ? zone : end);
+            }
+            if (c == '.') {
+                long value = parseIpv4(text, start, end);
+                if (value < 0) {
+                    return false;
+                }
+                setIpv4(value);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Parses a whole IPv4 or IPv6 literal.
+     *
+     * @param text the address
+     * @return true if it is a valid address
+     */
+    public boolean parse(CharSequence text) {
+        return text != null && parse(text, 0, text.length());
+    }
+
+    public boolean isIpv4() {
+        return ipv4;
+    }
+
+    public long high() {
+        return high;
+    }
+
+    public long low() {
+        return low;
+    }
+
+    /**
+     * Returns the bit at the given position, counted from the most significant bit.
+     *
+     * @param index 0 to 31 for IPv4, 0 to 127 for IPv6
+     */
+    public int bit(int index) {
+        if (ipv4) {
+            return (int) (low >>> (31 - index)) & 1;
+        }
+        return index < 64 ? (int) (high >>> (63 - index)) & 1 : (int) (low >>> (127 - index)) & 1;
+    }
+
+    /**
+     * Builds the InetAddress of the parsed address, without any name resolution.
+     */
+    public InetAddress toInetAddress() {
+        byte[] bytes;
+        if (ipv4) {
+            bytes = new byte[4];
+            for (int i = 0; i < 4; i++) {
+                bytes[i] = (byte) (low >>> (24 - 8 * i));
+            }
+        } else {
+            bytes = new byte[16];
+            for (int i = 0; i < 8; i++) {
+                bytes[i] = (byte) (high >>> (56 - 8 * i));
+                bytes[i + 8] = (byte) (low >>> (56 - 8 * i));
+            }
+        }
+        try {
+            return InetAddress.getByAddress(bytes);
+        } catch (UnknownHostException e) {
+            // Only thrown for an illegal length
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void setIpv4(long value) {
+        ipv4 = true;
+        high = 0;
+        low = value;
+    }
+
+    /**
+     * @return the address as an unsigned 32-bit value, or -1 if invalid
+     */
+    private static long parseIpv4(CharSequence text, int start, int end) {
+        long value = 0;
+        int octets = 0;
+        int pos = start;
+        while (pos < end) {
+            int octet = 0;
+            int digits = 0;
+            while (pos < end && text.charAt(pos) != '.') {
+                char c = text.charAt(pos);
+                if (c < '0' || c > '9' || digits == 3) {
+                    return -1;
+                }
+                octet = octet * 10 + (c - '0');
+                digits++;
+                pos++;
+            }
+            if (digits == 0 || octet > 255 || octets == 4) {
+                return -1;
+            }
+            value = (value << 8) | octet;
+            octets++;
+            if (pos < end) {
+                pos++;
+                if (pos == end) {
+                    return -1;
+                }
+            }
+        }
+        return octets == 4 ? value : -1;
+    }
+
+    private boolean parseIpv6(CharSequence text, int start, int end) {
+        int count = 0;
+        int compressedAt = -1;
+        int pos = start;
+
+        if (end - start >= 2 && text.charAt(start) == ':' && text.charAt(start + 1) == ':') {
+            compressedAt = 0;
+            pos = start + 2;
+        } else if (pos < end && text.charAt(pos) == ':') {
+            return false;
+        }
+
+        while (pos < end) {
+            if (count == 8) {
+                return false;
+            }
+            int segmentEnd = indexOf(text, ':', pos, end);
+            if (segmentEnd < 0) {
+                segmentEnd = end;
+            }
+
+            if (indexOf(text, '.', pos, segmentEnd) >= 0) {
+                // Embedded IPv4 tail (e.g. ::ffff:192.0.2.1), only allowed as the last two groups
+                long value = segmentEnd == end && count <= 6 ? parseIpv4(text, pos, segmentEnd) : -1;
+                if (value < 0) {
+                    return false;
+                }
+                groups[count++] = (int) (value >>> 16);
+                groups[count++] = (int) (value & 0xFFFF);
+                pos = end;
+                break;
+            }
+
+            int group = 0;
+            int digits = segmentEnd - pos;
+            if (digits == 0 || digits > 4) {
+                return false;
+            }
+            for (int i = pos; i < segmentEnd; i++) {
+                int digit = Character.digit(text.charAt(i), 16);
+                if (digit < 0) {
+                    return false;
+                }
+                group = (group << 4) | digit;
+            }
+            groups[count++] = group;
+            pos = segmentEnd;
+
+            if (pos < end) {
+                pos++;
+                if (pos == end) {
+                    return false;
+                }
+                if (text.charAt(pos) == ':') {
+                    if (compressedAt >= 0) {
+                        return false;
+                    }
+                    compressedAt = count;
+                    pos++;
+                }
+            }
+        }
+
+        if (compressedAt < 0 ? count != 8 : count > 7) {
+            return false;
+        }
+
+        // "::" stands for the missing groups: the groups after it are moved to the end
+        long h = 0;
+        long l = 0;
+        int missing = 8 - count;
+        for (int i = 0; i < 8; i++) {
+            int group;
+            if (compressedAt < 0 || i < compressedAt) {
+                group = groups[i];
+            } else if (i < compressedAt + missing) {
+                group = 0;
+            } else {
+                group = groups[i - missing];
+            }
+            if (i < 4) {
+                h = (h << 16) | group;
+            } else {
+                l = (l << 16) | group;
+            }
+        }
+
+        if (h == 0 && (l >>> 32) == 0xFFFFL) {
+            setIpv4(l & 0xFFFFFFFFL);
+        } else {
+            ipv4 = false;
+            high = h;
+            low = l;
+        }
+        return true;
+    }
+
+    private static int indexOf(CharSequence text, char c, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (text.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,45 @@
+package fr.romaindu35.authserver.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * Curseur opaque de pagination par clé (keyset pagination).
+ * Identifie la dernière ligne d'une page par sa clé de tri et son identifiant,
+ * afin que la page suivante reprenne strictement après elle sans OFFSET.
+ *
+ * @param sortKey valeur de la colonne de tri de la dernière ligne renvoyée
+ * @param id      identifiant de la dernière ligne renvoyée (départage les égalités de sortKey)
+ */
+public record KeysetCursor(Instant sortKey, UUID id) {
+
+    /**
+     * Encode le curseur sous une forme opaque transmissible au frontend.
+     *
+     * @return Le curseur encodé en Base64 URL-safe
+     */
+    public String encode() {
+        String raw = sortKey.getEpochSecond() + ":" + sortKey.getNano() + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Décode un curseur précédemment produit par {@link #encode()}.
+     *
+     * @param encoded Curseur encodé
+     * @return Le curseur décodé
+     * @throws IllegalArgumentException si le curseur est invalide
+     */
+    public static KeysetCursor decode(String encoded) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(encoded), StandardCharsets.UTF_8);
+            String[] parts = raw.split(":", 3);
+            Instant sortKey = Instant.ofEpochSecond(Long.parseLong(parts[0]), Long.parseLong(parts[1]));
+            return new KeysetCursor(sortKey, UUID.fromString(parts[2]));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Curseur de pagination invalide", e);
+        }
+    }
+}
@@ -5,6 +5,9 @@ import lombok.AllArgsConstructor;
 import lombok.Getter;
 
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.Set;
 
 @AllArgsConstructor
 @Getter
@@ -43,4 +46,26 @@ public enum Permissions {
                 .filter(Permissions::isAlwaysGranted)
                 .toArray(Permissions[]::new);
     }
-}
\ No newline at end of file
+
+    /**
+     * Encodes permissions as a bit mask, one bit per constant (its ordinal).
+     * Masks are stored in sessions and authorizations: new constants must be appended, never inserted or reordered.
+     */
+    public static int toMask(Collection<Permissions> permissions) {
+        int mask = 0;
+        for (Permissions permission : permissions) {
+            mask |= 1 << permission.ordinal();
+        }
+        return mask;
+    }
+
+    public static Set<Permissions> fromMask(int mask) {
+        Set<Permissions> permissions = EnumSet.noneOf(Permissions.class);
+        for (Permissions permission : values()) {
+            if ((mask & (1 << permission.ordinal())) != 0) {
+                permissions.add(permission);
+            }
+        }
+        return permissions;
+    }
+}
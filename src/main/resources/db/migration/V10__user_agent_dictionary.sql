@@ -0,0 +1,62 @@
+-- =============================================================================
+-- Version: 10
+-- Description: Dictionnaire des User-Agents référencé par l'historique des autorisations
+-- Date: 2026-10-19
+-- =============================================================================
+
+-- =============================================================================
+-- TABLE: user_agent_dictionary
+-- Description: Un User-Agent distinct par ligne, analysé une seule fois
+-- =============================================================================
+CREATE TABLE user_agent_dictionary (
+    id INTEGER GENERATED ALWAYS AS IDENTITY PRIMARY KEY,
+    user_agent VARCHAR(255) NOT NULL,
+    browser VARCHAR(100),
+    device_type VARCHAR(50),
+    os VARCHAR(100),
+    created_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP,
+
+    CONSTRAINT uk_user_agent_dictionary_user_agent UNIQUE (user_agent)
+);
+
+-- Reprise des User-Agents déjà présents dans l'historique
+INSERT INTO user_agent_dictionary (user_agent, browser, device_type, os)
+SELECT DISTINCT ON (user_agent) user_agent, browser, device_type, os
+FROM oauth2_authorization_history
+WHERE user_agent IS NOT NULL
+ORDER BY user_agent, granted_at DESC;
+
+ALTER TABLE oauth2_authorization_history
+    ADD COLUMN user_agent_id INTEGER;
+
+UPDATE oauth2_authorization_history h
+SET user_agent_id = d.id
+FROM user_agent_dictionary d
+WHERE d.user_agent = h.user_agent;
+
+ALTER TABLE oauth2_authorization_history
+    ADD CONSTRAINT fk_authorization_history_user_agent
+        FOREIGN KEY (user_agent_id)
+        REFERENCES user_agent_dictionary(id);
+
+-- Le texte et son analyse ne sont plus stockés qu'une fois, dans le dictionnaire
+ALTER TABLE oauth2_authorization_history
+    DROP COLUMN user_agent,
+    DROP COLUMN browser,
+    DROP COLUMN device_type,
+    DROP COLUMN os;
+
+-- Une entrée compactée hérite aussi du User-Agent de l'entrée suivante
+ALTER TABLE oauth2_authorization_history
+    DROP CONSTRAINT chk_compaction_consistency;
+
+ALTER TABLE oauth2_authorization_history
+    ADD CONSTRAINT chk_compaction_consistency
+        CHECK (compacted = false OR (is_active = false AND revoked_at IS NULL AND ip_address IS NULL AND user_agent_id IS NULL));
+
+COMMENT ON TABLE user_agent_dictionary IS 'User-Agents distincts rencontrés lors des autorisations, avec le résultat de leur analyse';
+COMMENT ON COLUMN user_agent_dictionary.user_agent IS 'User-Agent HTTP complet (tronqué à 255 caractères)';
+COMMENT ON COLUMN user_agent_dictionary.browser IS 'Nom du navigateur extrait du User-Agent';
+COMMENT ON COLUMN user_agent_dictionary.device_type IS 'Type d''appareil (ordinateur, mobile, tablette)';
+COMMENT ON COLUMN user_agent_dictionary.os IS 'Système d''exploitation de l''appareil';
+COMMENT ON COLUMN oauth2_authorization_history.user_agent_id IS 'Référence au User-Agent de l''appareil dans user_agent_dictionary (NULL si l''entrée est compactée)';
@@ -0,0 +1,21 @@
+-- =============================================================================
+-- Version: 11
+-- Description: Suivi de la géolocalisation des entrées d'historique
+-- Date: 2026-10-19
+-- =============================================================================
+
+-- Date de build de la base GeoIP ayant produit country/city (NULL : géolocalisation en attente).
+-- Les entrées existantes ont été géolocalisées avec une base inconnue : 'epoch' les marque comme résolues
+-- avec une base plus ancienne que toute base réelle. Le défaut est retiré ensuite, les nouvelles entrées sont NULL.
+ALTER TABLE oauth2_authorization_history
+    ADD COLUMN geo_database_build TIMESTAMP WITH TIME ZONE DEFAULT 'epoch';
+
+ALTER TABLE oauth2_authorization_history
+    ALTER COLUMN geo_database_build DROP DEFAULT;
+
+-- Entrées à (re)géolocaliser : en attente d'abord, puis celles résolues avec une base plus ancienne
+CREATE INDEX idx_authorization_history_geo_build
+    ON oauth2_authorization_history(geo_database_build NULLS FIRST)
+    WHERE ip_address IS NOT NULL;
+
+COMMENT ON COLUMN oauth2_authorization_history.geo_database_build IS 'Date de build de la base GeoIP utilisée pour country/city (NULL si la géolocalisation est en attente)';
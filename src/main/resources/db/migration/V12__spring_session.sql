@@ -0,0 +1,34 @@
+-- =============================================================================
+-- Version: 12
+-- Description: Stockage partagé des sessions HTTP (Spring Session JDBC)
+-- Date: 2026-10-19
+-- =============================================================================
+
+-- Schéma attendu par JdbcIndexedSessionRepository (schema-postgresql.sql de Spring Session).
+-- Les tables ne sont utilisées que si yoxo.session.store=jdbc ; sinon les sessions restent en mémoire dans Tomcat.
+CREATE TABLE spring_session (
+    primary_id CHAR(36) NOT NULL,
+    session_id CHAR(36) NOT NULL,
+    creation_time BIGINT NOT NULL,
+    last_access_time BIGINT NOT NULL,
+    max_inactive_interval INT NOT NULL,
+    expiry_time BIGINT NOT NULL,
+    principal_name VARCHAR(100),
+    CONSTRAINT spring_session_pk PRIMARY KEY (primary_id)
+);
+
+CREATE UNIQUE INDEX spring_session_ix1 ON spring_session (session_id);
+-- Purge des sessions expirées
+CREATE INDEX spring_session_ix2 ON spring_session (expiry_time);
+CREATE INDEX spring_session_ix3 ON spring_session (principal_name);
+
+CREATE TABLE spring_session_attributes (
+    session_primary_id CHAR(36) NOT NULL,
+    attribute_name VARCHAR(200) NOT NULL,
+    attribute_bytes BYTEA NOT NULL,
+    CONSTRAINT spring_session_attributes_pk PRIMARY KEY (session_primary_id, attribute_name),
+    CONSTRAINT spring_session_attributes_fk FOREIGN KEY (session_primary_id) REFERENCES spring_session (primary_id) ON DELETE CASCADE
+);
+
+COMMENT ON TABLE spring_session IS 'Sessions HTTP partagées entre les nœuds (Spring Session JDBC)';
+COMMENT ON TABLE spring_session_attributes IS 'Attributs sérialisés des sessions HTTP (contexte de sécurité, requête sauvegardée)';
@@ -0,0 +1,13 @@
+-- =============================================================================
+-- Version: 13
+-- Description: Un refresh token reste compté jusqu'à sa purge
+-- Date: 2026-10-19
+-- =============================================================================
+
+-- La purge, la réconciliation et les mises à jour incrémentales comptent désormais
+-- les refresh tokens non invalidés, expirés ou non : un token expiré est décompté
+-- une seule fois, lorsque la purge le supprime.
+COMMENT ON TABLE session_counter IS 'Nombre de sessions actives (refresh tokens non invalidés, jusqu''à leur purge) par utilisateur et par client OAuth2';
+COMMENT ON COLUMN session_counter.active_count IS 'Nombre de refresh tokens non invalidés et pas encore purgés';
+
+-- Les compteurs sont recalculés par la prochaine réconciliation
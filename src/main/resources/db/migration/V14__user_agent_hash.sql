@@ -0,0 +1,25 @@
+-- =============================================================================
+-- Version: 14
+-- Description: Identification des User-Agents par l'empreinte du texte complet
+-- Date: 2026-10-19
+-- =============================================================================
+
+-- Le texte stocké est tronqué à 255 caractères : deux User-Agents longs de même
+-- préfixe partageaient la même entrée. L'unicité porte désormais sur le SHA-256
+-- du User-Agent complet (les entrées existantes gardent celui du texte stocké).
+ALTER TABLE user_agent_dictionary
+    ADD COLUMN user_agent_hash VARCHAR(64);
+
+UPDATE user_agent_dictionary
+SET user_agent_hash = encode(sha256(convert_to(user_agent, 'UTF8')), 'hex');
+
+ALTER TABLE user_agent_dictionary
+    ALTER COLUMN user_agent_hash SET NOT NULL;
+
+ALTER TABLE user_agent_dictionary
+    DROP CONSTRAINT uk_user_agent_dictionary_user_agent;
+
+ALTER TABLE user_agent_dictionary
+    ADD CONSTRAINT uk_user_agent_dictionary_user_agent_hash UNIQUE (user_agent_hash);
+
+COMMENT ON COLUMN user_agent_dictionary.user_agent_hash IS 'SHA-256 (hexadécimal) du User-Agent complet, avant troncature';
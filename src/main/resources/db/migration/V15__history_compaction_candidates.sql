@@ -0,0 +1,12 @@
+-- =============================================================================
+-- Version: 15
+-- Description: Index des entrées candidates au compactage
+-- Date: 2026-10-19
+-- =============================================================================
+
+-- Entrées remplacées par un changement de scopes et pas encore compactées, dans l'ordre
+-- du curseur (granted_at, id) du compactage : chaque lot reprend après le précédent au lieu
+-- de relire depuis le début les entrées non éligibles. Une entrée compactée sort de l'index.
+CREATE INDEX idx_authorization_history_compaction_candidates
+    ON oauth2_authorization_history(granted_at, id)
+    WHERE is_active = false AND revoked_at IS NULL AND compacted = false;
@@ -0,0 +1,11 @@
+-- =============================================================================
+-- Version: 16
+-- Description: Index de la purge des autorisations expirées
+-- Date: 2026-10-19
+-- =============================================================================
+
+-- La purge tourne chaque minute et vide tous les lots d'autorisations expirées :
+-- chaque lot lit les plus anciennes par cet index au lieu de parcourir la table
+CREATE INDEX idx_oauth2_authorization_refresh_token_expires_at
+    ON oauth2_authorization(refresh_token_expires_at)
+    WHERE refresh_token_expires_at IS NOT NULL;
@@ -0,0 +1,44 @@
+-- =============================================================================
+-- Version: 6
+-- Description: Compteurs de sessions actives par utilisateur et par client
+-- Date: 2026-10-19
+-- =============================================================================
+
+-- =============================================================================
+-- TABLE: session_counter
+-- Description: Nombre de refresh tokens actifs (non expirés et non invalidés)
+--              par couple (utilisateur, client). Maintenu de façon incrémentale
+--              par les chemins de sauvegarde, suppression, invalidation et purge
+--              des autorisations, et réconcilié périodiquement.
+-- =============================================================================
+CREATE TABLE session_counter (
+    principal_name VARCHAR(200) NOT NULL,
+    client_id UUID NOT NULL,
+    active_count INTEGER NOT NULL DEFAULT 0,
+    updated_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP,
+
+    PRIMARY KEY (principal_name, client_id),
+
+    -- Contraintes
+    CONSTRAINT session_counter_active_count_positive CHECK (active_count >= 0),
+    CONSTRAINT fk_session_counter_client
+        FOREIGN KEY (client_id)
+        REFERENCES oauth2_client(id)
+        ON DELETE CASCADE
+);
+
+-- Initialisation à partir des autorisations existantes
+INSERT INTO session_counter (principal_name, client_id, active_count)
+SELECT a.principal_name, c.id, COUNT(*)
+FROM oauth2_authorization a
+JOIN oauth2_client c ON c.id::text = a.registered_client_id
+WHERE a.refresh_token_expires_at > CURRENT_TIMESTAMP
+  AND (a.refresh_token_metadata IS NULL OR a.refresh_token_metadata NOT LIKE '%"metadata.token.invalidated":true%')
+GROUP BY a.principal_name, c.id;
+
+-- Commentaires pour la table session_counter
+COMMENT ON TABLE session_counter IS 'Nombre de sessions actives (refresh tokens valides) par utilisateur et par client OAuth2';
+COMMENT ON COLUMN session_counter.principal_name IS 'Nom d''utilisateur (principal_name des autorisations OAuth2)';
+COMMENT ON COLUMN session_counter.client_id IS 'Référence au client OAuth2';
+COMMENT ON COLUMN session_counter.active_count IS 'Nombre de refresh tokens non expirés et non invalidés';
+COMMENT ON COLUMN session_counter.updated_at IS 'Horodatage de la dernière modification du compteur';
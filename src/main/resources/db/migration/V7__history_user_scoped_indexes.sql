@@ -0,0 +1,20 @@
+-- =============================================================================
+-- Version: 7
+-- Description: Index de l'historique des autorisations restreints à un utilisateur
+-- Date: 2026-10-19
+-- =============================================================================
+
+-- Recherche de l'autorisation active d'un couple (utilisateur, client) et test
+-- d'existence d'une autorisation active (NOT EXISTS de la page /connections)
+CREATE INDEX idx_authorization_history_active_pair
+    ON oauth2_authorization_history(user_id, client_id)
+    WHERE is_active = true;
+
+-- Dernière autorisation inactive par client pour un utilisateur
+-- (DISTINCT ON (client_id) ... ORDER BY client_id, revoked_at DESC NULLS LAST)
+CREATE INDEX idx_authorization_history_inactive_pair
+    ON oauth2_authorization_history(user_id, client_id, revoked_at DESC NULLS LAST)
+    WHERE is_active = false;
+
+-- Remplacé par idx_authorization_history_inactive_pair, plus aucune requête ne trie les inactives par granted_at
+DROP INDEX IF EXISTS idx_authorization_history_user_client_revoked;
@@ -0,0 +1,13 @@
+-- =============================================================================
+-- Version: 8
+-- Description: Index de parcours paginé de l'historique d'un couple (utilisateur, client)
+-- Date: 2026-10-19
+-- =============================================================================
+
+-- L'id départage les autorisations accordées au même instant : la pagination par clé
+-- (granted_at, id) < (?, ?) ORDER BY granted_at DESC, id DESC devient un simple parcours d'index
+CREATE INDEX idx_authorization_history_timeline
+    ON oauth2_authorization_history(user_id, client_id, granted_at DESC, id DESC);
+
+-- Remplacé par idx_authorization_history_timeline
+DROP INDEX IF EXISTS idx_authorization_history_granted_at;
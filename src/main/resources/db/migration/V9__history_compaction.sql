@@ -0,0 +1,28 @@
+-- =============================================================================
+-- Version: 9
+-- Description: Compactage des entrées d'historique remplacées par un changement de scopes
+-- Date: 2026-10-19
+-- =============================================================================
+
+-- Une entrée compactée ne conserve que ses scopes et ses dates : ses métadonnées
+-- (IP, User-Agent, géolocalisation) sont celles de l'entrée non compactée plus récente la plus proche
+ALTER TABLE oauth2_authorization_history
+    ADD COLUMN compacted BOOLEAN NOT NULL DEFAULT false;
+
+ALTER TABLE oauth2_authorization_history
+    ALTER COLUMN ip_address DROP NOT NULL;
+
+-- Seules les entrées non compactées portent leurs métadonnées
+ALTER TABLE oauth2_authorization_history
+    ADD CONSTRAINT chk_compaction_consistency
+        CHECK (compacted = false OR (is_active = false AND revoked_at IS NULL AND ip_address IS NULL));
+
+-- Une entrée compactée n'est jamais la dernière inactive d'un client : elle sort de l'index
+-- de la page /connections, qui ne grossit plus avec les changements de scopes
+DROP INDEX IF EXISTS idx_authorization_history_inactive_pair;
+CREATE INDEX idx_authorization_history_inactive_pair
+    ON oauth2_authorization_history(user_id, client_id, revoked_at DESC NULLS LAST)
+    WHERE is_active = false AND compacted = false;
+
+COMMENT ON COLUMN oauth2_authorization_history.compacted IS 'Indique si l''entrée a été compactée (métadonnées héritées de l''entrée non compactée plus récente la plus proche)';
+COMMENT ON COLUMN oauth2_authorization_history.ip_address IS 'Adresse IP de l''appareil lors de l''octroi de l''autorisation (NULL si l''entrée est compactée)';
@@ -0,0 +1,70 @@
+package fr.romaindu35.authserver;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.postgresql.PostgreSQLContainer;
+
+import java.util.UUID;
+
+/**
+ * Base of the tests that need the real schema: a PostgreSQL container migrated by Flyway, without the application
+ * context (which needs a keystore and the NationsGlory API).
+ * Skipped when Docker is not available.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+public abstract class PostgresTestSupport {
+
+    @Container
+    protected static final PostgreSQLContainer POSTGRES = new PostgreSQLContainer("postgres:17-alpine");
+
+    protected static HikariDataSource dataSource;
+    protected static JdbcTemplate jdbcTemplate;
+    protected static TransactionTemplate transactionTemplate;
+
+    @BeforeAll
+    static void migrate() {
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl(POSTGRES.getJdbcUrl());
+        config.setUsername(POSTGRES.getUsername());
+        config.setPassword(POSTGRES.getPassword());
+        config.setMaximumPoolSize(32);
+        dataSource = new HikariDataSource(config);
+
+        Flyway.configure()
+                .dataSource(dataSource)
+                .locations("classpath:db/migration")
+                .load()
+                .migrate();
+
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+    }
+
+    @AfterAll
+    static void close() {
+        if (dataSource != null) {
+            dataSource.close();
+        }
+    }
+
+    protected static UUID insertUser(String username) {
+        return jdbcTemplate.queryForObject(
+                "INSERT INTO users (username) VALUES (?) RETURNING id", UUID.class, username);
+    }
+
+    protected static UUID insertClient(String clientId, UUID ownerId) {
+        return jdbcTemplate.queryForObject("""
+                INSERT INTO oauth2_client (client_id, client_name, client_type, owner_id)
+                VALUES (?, ?, 'SERVER', ?)
+                RETURNING id
+                """, UUID.class, clientId, clientId, ownerId);
+    }
+}
@@ -0,0 +1,140 @@
+package fr.romaindu35.authserver.auth.service;
+
+import fr.romaindu35.authserver.auth.config.AuthProperties;
+import fr.romaindu35.authserver.auth.config.NationsGloryClientConfig;
+import fr.romaindu35.authserver.auth.controller.LoginController;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.web.client.ExpectedCount;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.servlet.view.RedirectView;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.hamcrest.Matchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withServerError;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withStatus;
+
+/**
+ * Circuit breaker and bulkhead of the NationsGlory API, built by NationsGloryClientConfig, against a mocked API.
+ */
+class NationsGloryClientTest {
+
+    private static final String CHECK_TOKEN = "https://ng.test/oauth/checkToken";
+
+    private MeterRegistry meterRegistry;
+    private MockRestServiceServer server;
+    private CircuitBreaker circuitBreaker;
+    private Bulkhead bulkhead;
+    private NationsGloryClient client;
+    private AuthService authService;
+
+    @BeforeEach
+    void setUp() {
+        AuthProperties authProperties = mock(AuthProperties.class);
+        when(authProperties.getNgClientSecret()).thenReturn("secret");
+        when(authProperties.getNgApiSlidingWindowSize()).thenReturn(20);
+        when(authProperties.getNgApiFailureRateThreshold()).thenReturn(50f);
+        when(authProperties.getNgApiSlowCallRateThreshold()).thenReturn(50f);
+        when(authProperties.getNgApiSlowCallDuration()).thenReturn(Duration.ofSeconds(2));
+        when(authProperties.getNgApiOpenDuration()).thenReturn(Duration.ofSeconds(30));
+        when(authProperties.getNgApiMaxConcurrentCalls()).thenReturn(1);
+
+        meterRegistry = new SimpleMeterRegistry();
+        NationsGloryClientConfig config = new NationsGloryClientConfig(authProperties, meterRegistry);
+        circuitBreaker = config.nationsGloryCircuitBreaker();
+        bulkhead = config.nationsGloryBulkhead();
+
+        RestClient.Builder builder = RestClient.builder().baseUrl("https://ng.test");
+        server = MockRestServiceServer.bindTo(builder).build();
+        client = new NationsGloryClient(builder.build(), circuitBreaker, bulkhead, authProperties);
+
+        LoginController loginController = mock(LoginController.class);
+        when(loginController.getRedirectURLToNationsGloryOAuth()).thenReturn("https://ng.test/oauth/auth");
+        authService = new AuthService(client, loginController, mock(UserLoginService.class));
+    }
+
+    @Test
+    void failuresOpenTheBreakerAndLoginsAreSentToTheRetryPage() {
+        // minimumNumberOfCalls = 10 : le taux d'échec est évalué au dixième appel
+        server.expect(ExpectedCount.times(10), requestTo(startsWith(CHECK_TOKEN))).andRespond(withServerError());
+
+        for (int i = 0; i < 10; i++) {
+            assertThatThrownBy(() -> client.checkToken("token"))
+                    .isInstanceOf(NationsGloryClient.UnavailableException.class);
+        }
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+
+        // Ouvert : plus aucun appel ne part vers l'API
+        assertThatThrownBy(() -> client.checkToken("token"))
+                .isInstanceOf(NationsGloryClient.UnavailableException.class)
+                .hasCauseInstanceOf(CallNotPermittedException.class);
+        RedirectView redirect = authService.callback("token", new MockHttpServletRequest());
+        assertThat(redirect.getUrl()).isEqualTo("/login?upstream=unavailable");
+
+        server.verify();
+        assertThat(meterRegistry.counter("yoxo.nationsglory.circuit.transitions", "from", "CLOSED", "to", "OPEN").count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    void rejectedTokensDoNotOpenTheBreaker() {
+        server.expect(ExpectedCount.times(20), requestTo(startsWith(CHECK_TOKEN))).andRespond(withStatus(HttpStatus.UNAUTHORIZED));
+
+        for (int i = 0; i < 20; i++) {
+            assertThatThrownBy(() -> client.checkToken("token")).isInstanceOf(HttpClientErrorException.Unauthorized.class);
+        }
+
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        server.verify();
+    }
+
+    @Test
+    void rejectedTokenSendsBackToNationsGlory() {
+        server.expect(requestTo(startsWith(CHECK_TOKEN))).andRespond(withStatus(HttpStatus.UNAUTHORIZED));
+
+        RedirectView redirect = authService.callback("token", new MockHttpServletRequest());
+
+        assertThat(redirect.getUrl()).isEqualTo("https://ng.test/oauth/auth");
+    }
+
+    @Test
+    void fullBulkheadRejectsImmediately() {
+        assertThat(bulkhead.getBulkheadConfig().getMaxWaitDuration()).isZero();
+        // La seule place est occupée par un appel en cours
+        assertThat(bulkhead.tryAcquirePermission()).isTrue();
+        try {
+            long start = System.nanoTime();
+            assertThatThrownBy(() -> client.checkToken("token"))
+                    .isInstanceOf(NationsGloryClient.UnavailableException.class)
+                    .hasCauseInstanceOf(BulkheadFullException.class);
+            assertThat(System.nanoTime() - start).isLessThan(TimeUnit.MILLISECONDS.toNanos(500));
+
+            RedirectView redirect = authService.callback("token", new MockHttpServletRequest());
+            assertThat(redirect.getUrl()).isEqualTo("/login?upstream=unavailable");
+        } finally {
+            bulkhead.onComplete();
+        }
+
+        // Aucun appel n'est parti, et un bulkhead plein n'est pas une panne de l'API
+        server.verify();
+        assertThat(meterRegistry.counter("yoxo.nationsglory.bulkhead.rejected").count()).isEqualTo(2);
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+}
@@ -0,0 +1,168 @@
+package fr.romaindu35.authserver.service;
+
+import fr.romaindu35.authserver.service.AdaptiveConcurrencyLimiter.Priority;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Latency samples are fed directly, so the limit follows a deterministic path.
+ * Parameters are those of application.properties: limit 50 (10 to 400), tolerance 1.5, smoothing 0.2,
+ * long window 600, shares 0.9 (NORMAL) and 0.7 (LOW).
+ */
+class AdaptiveConcurrencyLimiterTest {
+
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    void lowerPrioritiesOnlyGetTheirShare() {
+        AdaptiveConcurrencyLimiter limiter = limiter(true);
+
+        assertThat(acquireAll(limiter, Priority.LOW)).isEqualTo(35);
+        assertThat(acquireAll(limiter, Priority.NORMAL)).isEqualTo(10);
+        assertThat(acquireAll(limiter, Priority.HIGH)).isEqualTo(5);
+        assertThat(limiter.tryAcquire(Priority.LOW)).isFalse();
+    }
+
+    @Test
+    void usedLimitGrowsWhileLatencyIsSteady() {
+        AdaptiveConcurrencyLimiter limiter = limiter(true);
+        hold(limiter, 40);
+
+        for (int i = 0; i < 100; i++) {
+            limiter.release(Priority.HIGH, 10 * MS);
+            assertThat(limiter.tryAcquire(Priority.HIGH)).isTrue();
+        }
+
+        // Croît tant que 40 requêtes occupent au moins la moitié de la limite
+        assertThat(limiter.getLimit()).isGreaterThan(75).isLessThanOrEqualTo(81);
+    }
+
+    @Test
+    void unusedLimitDoesNotGrow() {
+        AdaptiveConcurrencyLimiter limiter = limiter(true);
+
+        sample(limiter, Priority.HIGH, 10 * MS, 100);
+
+        assertThat(limiter.getLimit()).isEqualTo(50);
+    }
+
+    @Test
+    void latencyRiseShrinksTheLimitAtMostByHalfPerSample() {
+        AdaptiveConcurrencyLimiter limiter = limiter(true);
+        sample(limiter, Priority.HIGH, 10 * MS, 100);
+
+        double previous = limiter.getLimit();
+        for (int i = 0; i < 30; i++) {
+            sample(limiter, Priority.HIGH, 100 * MS, 1);
+            assertThat(limiter.getLimit()).isGreaterThanOrEqualTo(previous / 2).isLessThanOrEqualTo(previous);
+            previous = limiter.getLimit();
+        }
+
+        assertThat(limiter.getLimit()).isEqualTo(10);
+    }
+
+    @Test
+    void slowPriorityDoesNotShrinkTheLimitOfTheOthers() {
+        AdaptiveConcurrencyLimiter limiter = limiter(true);
+        sample(limiter, Priority.HIGH, 5 * MS, 100);
+
+        // Les appels de gestion sont lents par nature, pas à cause d'une file d'attente
+        sample(limiter, Priority.LOW, 500 * MS, 100);
+        assertThat(limiter.getLimit()).isEqualTo(50);
+
+        sample(limiter, Priority.HIGH, 50 * MS, 30);
+        assertThat(limiter.getLimit()).isLessThan(50);
+    }
+
+    @Test
+    void baselineFollowsADurablySlowerServiceOnceAtTheMinimum() {
+        AdaptiveConcurrencyLimiter limiter = limiter(true);
+        sample(limiter, Priority.HIGH, 10 * MS, 200);
+        sample(limiter, Priority.HIGH, 30 * MS, 2000);
+        assertThat(limiter.getLimit()).isEqualTo(10);
+
+        // 30 ms est devenu la latence habituelle : la limite peut de nouveau croître
+        hold(limiter, 9);
+        for (int i = 0; i < 200; i++) {
+            limiter.release(Priority.HIGH, 30 * MS);
+            limiter.tryAcquire(Priority.HIGH);
+        }
+        assertThat(limiter.getLimit()).isGreaterThan(15);
+    }
+
+    /**
+     * Closed-loop overload: 300 callers against a server that serves 40 requests at the base latency and slows down
+     * linearly beyond that. Without the limiter, every request takes 7.5 times the base latency; with it, the
+     * limit settles where latency stays within 3 times the base.
+     */
+    @Test
+    void keepsLatencyBoundedUnderOverload() {
+        assertThat(withinThreeTimesBase(limiter(true))).isEqualTo(1.0);
+        assertThat(withinThreeTimesBase(limiter(false))).isZero();
+    }
+
+    @Test
+    void disabledLimiterAdmitsEverything() {
+        AdaptiveConcurrencyLimiter limiter = limiter(false);
+
+        for (int i = 0; i < 1000; i++) {
+            assertThat(limiter.tryAcquire(Priority.LOW)).isTrue();
+        }
+    }
+
+    private static double withinThreeTimesBase(AdaptiveConcurrencyLimiter limiter) {
+        int callers = 300;
+        int capacity = 40;
+        long base = 10 * MS;
+        int steps = 20_000;
+
+        int inFlight = 0;
+        int within = 0;
+        int measured = 0;
+        for (int step = 0; step < steps; step++) {
+            while (inFlight < callers && limiter.tryAcquire(Priority.HIGH)) {
+                inFlight++;
+            }
+            long latency = base * Math.max(capacity, inFlight) / capacity;
+            // Une requête se termine, son appelant revient à l'étape suivante
+            limiter.release(Priority.HIGH, latency);
+            inFlight--;
+            if (step >= steps / 2) {
+                measured++;
+                if (latency <= 3 * base) {
+                    within++;
+                }
+            }
+        }
+        return (double) within / measured;
+    }
+
+    private static AdaptiveConcurrencyLimiter limiter(boolean enabled) {
+        return new AdaptiveConcurrencyLimiter(new SimpleMeterRegistry(), enabled, 50, 10, 400, 1.5, 0.2, 600, 0.9, 0.7);
+    }
+
+    private static int acquireAll(AdaptiveConcurrencyLimiter limiter, Priority priority) {
+        int acquired = 0;
+        while (limiter.tryAcquire(priority)) {
+            acquired++;
+        }
+        return acquired;
+    }
+
+    private static void hold(AdaptiveConcurrencyLimiter limiter, int requests) {
+        for (int i = 0; i < requests; i++) {
+            assertThat(limiter.tryAcquire(Priority.HIGH)).isTrue();
+        }
+    }
+
+    private static void sample(AdaptiveConcurrencyLimiter limiter, Priority priority, long latencyNanos, int count) {
+        for (int i = 0; i < count; i++) {
+            assertThat(limiter.tryAcquire(priority)).isTrue();
+            limiter.release(priority, latencyNanos);
+        }
+    }
+}
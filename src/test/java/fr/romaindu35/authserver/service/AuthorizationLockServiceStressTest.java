@@ -0,0 +1,261 @@
+package fr.romaindu35.authserver.service;
+
+import fr.romaindu35.authserver.PostgresTestSupport;
+import fr.romaindu35.authserver.auth.service.AuthenticatedUser;
+import fr.romaindu35.authserver.auth.service.AuthenticatedUserService;
+import fr.romaindu35.authserver.entity.OAuth2AuthorizationHistory;
+import fr.romaindu35.authserver.repository.OAuth2AuthorizationHistoryRepository;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.boot.model.naming.CamelCaseToUnderscoresNamingStrategy;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.jpa.repository.support.JpaRepositoryFactory;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.orm.jpa.persistenceunit.PersistenceManagedTypes;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.security.oauth2.core.AuthorizationGrantType;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.security.oauth2.server.authorization.OAuth2Authorization;
+import org.springframework.security.oauth2.server.authorization.client.RegisteredClient;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.net.InetAddress;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Concurrent logins against the advisory lock of {@link AuthorizationLockService}.
+ * Each login is tracked by the real {@link OAuth2AuthorizationTrackingService#track} in one JPA transaction, through
+ * the real history repository: lock the pair, archive its active entries (archiveActive), save the new active entry.
+ * Request metadata, user resolution and client display data are stubbed, as there is no HTTP request.
+ * The invariant is at most one active history entry per (user, client) pair.
+ */
+class AuthorizationLockServiceStressTest extends PostgresTestSupport {
+
+    private static final Logger log = LoggerFactory.getLogger(AuthorizationLockServiceStressTest.class);
+
+    private static final int THREADS = 16;
+
+    private static LocalContainerEntityManagerFactoryBean entityManagerFactoryBean;
+    private static TransactionTemplate jpaTransactionTemplate;
+    private static OAuth2AuthorizationHistoryRepository historyRepository;
+
+    // Nom d'utilisateur -> id, pour la résolution simulée de l'utilisateur
+    private final Map<String, UUID> users = new ConcurrentHashMap<>();
+    private OAuth2AuthorizationTrackingService trackingService;
+
+    @BeforeAll
+    static void createRepository() {
+        entityManagerFactoryBean = new LocalContainerEntityManagerFactoryBean();
+        entityManagerFactoryBean.setDataSource(dataSource);
+        entityManagerFactoryBean.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+        entityManagerFactoryBean.setManagedTypes(PersistenceManagedTypes.of(OAuth2AuthorizationHistory.class.getName()));
+        // Nommage des colonnes de Spring Boot (authorizedScopes -> authorized_scopes)
+        entityManagerFactoryBean.setJpaPropertyMap(Map.of(
+                "hibernate.physical_naming_strategy", CamelCaseToUnderscoresNamingStrategy.class.getName()));
+        entityManagerFactoryBean.afterPropertiesSet();
+        EntityManagerFactory entityManagerFactory = entityManagerFactoryBean.getObject();
+
+        // Même DataSource : le JdbcTemplate du verrou utilise la connexion de la transaction JPA
+        jpaTransactionTemplate = new TransactionTemplate(new JpaTransactionManager(entityManagerFactory));
+        historyRepository = new JpaRepositoryFactory(SharedEntityManagerCreator.createSharedEntityManager(entityManagerFactory))
+                .getRepository(OAuth2AuthorizationHistoryRepository.class);
+    }
+
+    @AfterAll
+    static void closeRepository() {
+        if (entityManagerFactoryBean != null) {
+            entityManagerFactoryBean.destroy();
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate.update("DELETE FROM oauth2_authorization_history");
+        Integer userAgentId = jdbcTemplate.queryForObject("""
+                INSERT INTO user_agent_dictionary (user_agent_hash, user_agent) VALUES ('stress-test', 'stress-test')
+                ON CONFLICT (user_agent_hash) DO UPDATE SET user_agent = EXCLUDED.user_agent
+                RETURNING id
+                """, Integer.class);
+
+        RequestMetadataExtractor requestMetadataExtractor = mock(RequestMetadataExtractor.class);
+        when(requestMetadataExtractor.extract()).thenReturn(new RequestMetadataExtractor.RequestMetadata(
+                InetAddress.getLoopbackAddress(), userAgentId, null, null, null, null, null, null));
+        AuthenticatedUserService authenticatedUserService = mock(AuthenticatedUserService.class);
+        when(authenticatedUserService.findByUsername(any())).thenAnswer(invocation -> {
+            String username = invocation.getArgument(0);
+            return Optional.ofNullable(users.get(username)).map(id -> new AuthenticatedUser(id, username, 0));
+        });
+        // Client public : pas de session unique, seul l'historique est en jeu
+        ClientDisplayCache clientDisplayCache = mock(ClientDisplayCache.class);
+        when(clientDisplayCache.findById(any())).thenReturn(Optional.empty());
+
+        trackingService = new OAuth2AuthorizationTrackingService(historyRepository, requestMetadataExtractor,
+                authenticatedUserService, clientDisplayCache, mock(OAuth2AuthorizationRevocationService.class),
+                new AuthorizationLockService(jdbcTemplate));
+    }
+
+    @Test
+    void twoConcurrentLoginsOfTheSamePairLeaveOneActiveEntry() throws Exception {
+        UUID userId = insertUser("pair-user-" + UUID.randomUUID().toString().substring(0, 8));
+        UUID clientId = insertClient("pair-client-" + UUID.randomUUID(), userId);
+
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            List<Future<?>> logins = new ArrayList<>();
+            for (int i = 0; i < 2; i++) {
+                logins.add(executor.submit(() -> {
+                    start.await();
+                    login(userId, clientId);
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> login : logins) {
+                login.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(activeEntries(userId, clientId)).isEqualTo(1);
+        assertThat(totalEntries(userId, clientId)).isEqualTo(2);
+    }
+
+    @Test
+    void hammeringOnePairKeepsOneActiveEntry() throws Exception {
+        UUID userId = insertUser("hot-user-" + UUID.randomUUID().toString().substring(0, 8));
+        UUID clientId = insertClient("hot-client-" + UUID.randomUUID(), userId);
+        int loginsPerThread = 25;
+
+        long elapsed = runConcurrently(THREADS, loginsPerThread, thread -> login(userId, clientId));
+
+        report("one pair", THREADS * loginsPerThread, elapsed);
+        assertThat(activeEntries(userId, clientId)).isEqualTo(1);
+        assertThat(totalEntries(userId, clientId)).isEqualTo(THREADS * loginsPerThread);
+    }
+
+    @Test
+    void manyPairsDoNotSerializeOnEachOther() throws Exception {
+        int pairs = THREADS * 4;
+        List<UUID[]> pairIds = new ArrayList<>(pairs);
+        for (int i = 0; i < pairs; i++) {
+            UUID userId = insertUser("many-user-" + UUID.randomUUID().toString().substring(0, 8));
+            pairIds.add(new UUID[]{userId, insertClient("many-client-" + UUID.randomUUID(), userId)});
+        }
+        int loginsPerThread = 25;
+
+        // Chaque thread alterne entre plusieurs couples, partagés avec les autres threads
+        long elapsed = runConcurrently(THREADS, loginsPerThread, thread -> {
+            UUID[] pair = pairIds.get(ThreadLocalRandom.current().nextInt(pairs));
+            login(pair[0], pair[1]);
+        });
+
+        report("many pairs", THREADS * loginsPerThread, elapsed);
+        Integer violations = jdbcTemplate.queryForObject("""
+                SELECT COUNT(*) FROM (
+                    SELECT user_id, client_id FROM oauth2_authorization_history
+                    WHERE is_active = true
+                    GROUP BY user_id, client_id
+                    HAVING COUNT(*) > 1
+                ) duplicates
+                """, Integer.class);
+        assertThat(violations).isZero();
+    }
+
+    /**
+     * A new login of the user to the client, tracked in its own transaction as when the authorization is saved.
+     */
+    private void login(UUID userId, UUID clientId) {
+        String username = "user-" + userId;
+        users.put(username, userId);
+        RegisteredClient client = RegisteredClient.withId(clientId.toString())
+                .clientId("client-" + clientId)
+                .authorizationGrantType(AuthorizationGrantType.AUTHORIZATION_CODE)
+                .redirectUri("https://client.test/callback")
+                .build();
+        Instant now = Instant.now();
+        OAuth2Authorization authorization = OAuth2Authorization.withRegisteredClient(client)
+                .id(UUID.randomUUID().toString())
+                .principalName(username)
+                .authorizationGrantType(AuthorizationGrantType.AUTHORIZATION_CODE)
+                .authorizedScopes(Set.of("openid"))
+                .accessToken(new OAuth2AccessToken(OAuth2AccessToken.TokenType.BEARER, "token", now, now.plusSeconds(300)))
+                .build();
+
+        jpaTransactionTemplate.executeWithoutResult(status -> trackingService.track(authorization));
+    }
+
+    private static long runConcurrently(int threads, int iterations, Login login) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> workers = new ArrayList<>(threads);
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                workers.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < iterations; i++) {
+                        login.run(thread);
+                    }
+                    return null;
+                }));
+            }
+            long begin = System.nanoTime();
+            start.countDown();
+            for (Future<?> worker : workers) {
+                worker.get(2, TimeUnit.MINUTES);
+            }
+            return System.nanoTime() - begin;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void report(String scenario, int logins, long elapsedNanos) {
+        double seconds = elapsedNanos / 1_000_000_000.0;
+        log.info("{}: {} logins in {} ms ({} logins/s)", scenario, logins,
+                TimeUnit.NANOSECONDS.toMillis(elapsedNanos), String.format("%.0f", logins / seconds));
+    }
+
+    private static int activeEntries(UUID userId, UUID clientId) {
+        return jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM oauth2_authorization_history WHERE user_id = ? AND client_id = ? AND is_active = true",
+                Integer.class, userId, clientId);
+    }
+
+    private static int totalEntries(UUID userId, UUID clientId) {
+        return jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM oauth2_authorization_history WHERE user_id = ? AND client_id = ?",
+                Integer.class, userId, clientId);
+    }
+
+    @FunctionalInterface
+    private interface Login {
+        void run(int thread);
+    }
+}
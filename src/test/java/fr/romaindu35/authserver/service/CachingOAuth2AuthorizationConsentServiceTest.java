@@ -0,0 +1,81 @@
+package fr.romaindu35.authserver.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.oauth2.server.authorization.OAuth2AuthorizationConsent;
+import org.springframework.security.oauth2.server.authorization.OAuth2AuthorizationConsentService;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CachingOAuth2AuthorizationConsentServiceTest {
+
+    private final OAuth2AuthorizationConsentService delegate = mock(OAuth2AuthorizationConsentService.class);
+
+    @Test
+    void absentConsentIsCached() {
+        CachingOAuth2AuthorizationConsentService service = service(Duration.ofSeconds(10));
+
+        assertThat(service.findById("client", "alice")).isNull();
+        assertThat(service.findById("client", "alice")).isNull();
+
+        verify(delegate, times(1)).findById("client", "alice");
+    }
+
+    @Test
+    void grantedConsentExpiresAfterItsOwnTtl() throws Exception {
+        OAuth2AuthorizationConsent consent = consent();
+        when(delegate.findById("client", "alice")).thenReturn(consent);
+        CachingOAuth2AuthorizationConsentService service = service(Duration.ofMillis(200));
+
+        assertThat(service.findById("client", "alice")).isSameAs(consent);
+        assertThat(service.findById("client", "alice")).isSameAs(consent);
+        verify(delegate, times(1)).findById("client", "alice");
+
+        // Révoqué sur un autre nœud : relu une fois la courte durée de vie écoulée
+        when(delegate.findById("client", "alice")).thenReturn(null);
+        Thread.sleep(400);
+        assertThat(service.findById("client", "alice")).isNull();
+        verify(delegate, times(2)).findById("client", "alice");
+    }
+
+    @Test
+    void zeroTtlNeverCachesGrantedConsents() {
+        OAuth2AuthorizationConsent consent = consent();
+        when(delegate.findById("client", "alice")).thenReturn(consent);
+        CachingOAuth2AuthorizationConsentService service = service(Duration.ZERO);
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(service.findById("client", "alice")).isSameAs(consent);
+        }
+
+        verify(delegate, times(3)).findById("client", "alice");
+    }
+
+    @Test
+    void removeOnThisNodeInvalidatesAtOnce() {
+        OAuth2AuthorizationConsent consent = consent();
+        when(delegate.findById("client", "alice")).thenReturn(consent);
+        CachingOAuth2AuthorizationConsentService service = service(Duration.ofMinutes(1));
+        service.findById("client", "alice");
+
+        service.remove(consent);
+        when(delegate.findById("client", "alice")).thenReturn(null);
+
+        assertThat(service.findById("client", "alice")).isNull();
+    }
+
+    private CachingOAuth2AuthorizationConsentService service(Duration grantedTtl) {
+        return new CachingOAuth2AuthorizationConsentService(delegate, new SimpleMeterRegistry(), 100,
+                Duration.ofMinutes(5), grantedTtl);
+    }
+
+    private static OAuth2AuthorizationConsent consent() {
+        return OAuth2AuthorizationConsent.withId("client", "alice").scope("profile").build();
+    }
+}
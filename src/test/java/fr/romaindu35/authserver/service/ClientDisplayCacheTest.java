@@ -0,0 +1,111 @@
+package fr.romaindu35.authserver.service;
+
+import fr.romaindu35.authserver.entity.OAuth2Client;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ClientDisplayCacheTest {
+
+    private static final UUID ID = UUID.randomUUID();
+
+    private final CountingJdbcTemplate jdbcTemplate = new CountingJdbcTemplate();
+    private final ClientDisplayCache cache =
+            new ClientDisplayCache(jdbcTemplate, new SimpleMeterRegistry(), 100, Duration.ofMinutes(5));
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+    }
+
+    @Test
+    void autocommittedReadIsCachedUnderBothKeys() {
+        assertThat(cache.findById(ID)).map(ClientDisplayCache.ClientDisplay::type).contains(OAuth2Client.ClientType.CLIENT);
+        assertThat(cache.findById(ID)).isPresent();
+        assertThat(cache.findByClientId("spa")).isPresent();
+
+        assertThat(jdbcTemplate.queries).isEqualTo(1);
+    }
+
+    @Test
+    void readOnlyTransactionReadIsNotCached() {
+        // Transaction de gestion en lecture seule : elle peut être servie par le réplica
+        TransactionSynchronizationManager.initSynchronization();
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        cache.findById(ID);
+        cache.findById(ID);
+        assertThat(jdbcTemplate.queries).isEqualTo(2);
+
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+        TransactionSynchronizationManager.clearSynchronization();
+        cache.findById(ID);
+        cache.findById(ID);
+        assertThat(jdbcTemplate.queries).isEqualTo(3);
+    }
+
+    @Test
+    void nothingIsCachedWhileAChangeIsUncommitted() {
+        TransactionSynchronizationManager.initSynchronization();
+        jdbcTemplate.type = OAuth2Client.ClientType.SERVER;
+        cache.evict(ID, "spa");
+
+        // La transaction relit sa propre modification, pas encore validée
+        assertThat(cache.findById(ID)).map(ClientDisplayCache.ClientDisplay::type).contains(OAuth2Client.ClientType.SERVER);
+        cache.findByClientId("spa");
+        assertThat(jdbcTemplate.queries).isEqualTo(2);
+
+        // Annulée : la base n'a jamais changé
+        jdbcTemplate.type = OAuth2Client.ClientType.CLIENT;
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+        }
+        TransactionSynchronizationManager.clearSynchronization();
+
+        assertThat(cache.findById(ID)).map(ClientDisplayCache.ClientDisplay::type).contains(OAuth2Client.ClientType.CLIENT);
+        assertThat(cache.findById(ID)).isPresent();
+        assertThat(jdbcTemplate.queries).isEqualTo(3);
+    }
+
+    @Test
+    void unknownClientIsCached() {
+        jdbcTemplate.exists = false;
+
+        assertThat(cache.findByClientId("made-up")).isEmpty();
+        assertThat(cache.findByClientId("made-up")).isEmpty();
+
+        assertThat(jdbcTemplate.queries).isEqualTo(1);
+    }
+
+    /**
+     * oauth2_client row with a type set by the test, counting the queries made.
+     */
+    private static final class CountingJdbcTemplate extends JdbcTemplate {
+
+        private OAuth2Client.ClientType type = OAuth2Client.ClientType.CLIENT;
+        private boolean exists = true;
+        private int queries;
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> List<T> query(String sql, RowMapper<T> rowMapper, Object... args) {
+            queries++;
+            if (!exists) {
+                return List.of();
+            }
+            return List.of((T) new ClientDisplayCache.ClientDisplay(ID, "spa", "SPA", "owner", type, false));
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package fr.romaindu35.authserver.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.net.InetAddress;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ClientIpResolverTest {
+
+    private final ClientIpResolver resolver = new ClientIpResolver(List.of("10.0.0.0/8", "::1/128"));
+
+    @Test
+    void untrustedPeerIsTheClientWhateverItForwards() throws Exception {
+        MockHttpServletRequest request = request("203.0.113.7");
+        request.addHeader("X-Forwarded-For", "198.51.100.1");
+        request.addHeader("Forwarded", "for=198.51.100.1");
+
+        assertThat(resolver.resolve(request)).isEqualTo(address("203.0.113.7"));
+    }
+
+    @Test
+    void trustedPeerWithoutChainIsTheClient() throws Exception {
+        assertThat(resolver.resolve(request("10.0.0.1"))).isEqualTo(address("10.0.0.1"));
+    }
+
+    @Test
+    void unparsableRemoteAddressFallsBackToLoopback() {
+        assertThat(resolver.resolve(request("not-an-ip"))).isEqualTo(InetAddress.getLoopbackAddress());
+    }
+
+    @Test
+    void xForwardedForStopsAtTheFirstUntrustedHop() throws Exception {
+        MockHttpServletRequest request = request("10.0.0.1");
+        // 198.51.100.1 is written by the client itself
+        request.addHeader("X-Forwarded-For", "198.51.100.1, 203.0.113.9, 10.0.0.2");
+
+        assertThat(resolver.resolve(request)).isEqualTo(address("203.0.113.9"));
+    }
+
+    @Test
+    void xForwardedForChainOfTrustedHopsKeepsTheLeftMost() throws Exception {
+        MockHttpServletRequest request = request("10.0.0.1");
+        request.addHeader("X-Forwarded-For", "10.0.0.3,10.0.0.2");
+
+        assertThat(resolver.resolve(request)).isEqualTo(address("10.0.0.3"));
+    }
+
+    @Test
+    void xForwardedForSpansSeveralHeaders() throws Exception {
+        MockHttpServletRequest request = request("10.0.0.1");
+        request.addHeader("X-Forwarded-For", "198.51.100.1, 203.0.113.9");
+        request.addHeader("X-Forwarded-For", "10.0.0.2");
+
+        assertThat(resolver.resolve(request)).isEqualTo(address("203.0.113.9"));
+    }
+
+    @Test
+    void xForwardedForAcceptsPortsAndIpv6() throws Exception {
+        MockHttpServletRequest ipv4 = request("10.0.0.1");
+        ipv4.addHeader("X-Forwarded-For", "203.0.113.9:51234, 10.0.0.2:443");
+        assertThat(resolver.resolve(ipv4)).isEqualTo(address("203.0.113.9"));
+
+        MockHttpServletRequest ipv6 = request("::1");
+        ipv6.addHeader("X-Forwarded-For", "2001:db8::5");
+        assertThat(resolver.resolve(ipv6)).isEqualTo(address("2001:db8::5"));
+
+        MockHttpServletRequest bracketed = request("::1");
+        bracketed.addHeader("X-Forwarded-For", "[2001:db8::6]:8443");
+        assertThat(resolver.resolve(bracketed)).isEqualTo(address("2001:db8::6"));
+    }
+
+    @Test
+    void malformedHopStopsAtTheLastTrustedProxy() throws Exception {
+        for (String malformed : List.of("garbage", "unknown", "", "300.1.2.3", "1::2::3", "[2001:db8::1")) {
+            MockHttpServletRequest request = request("10.0.0.1");
+            request.addHeader("X-Forwarded-For", "203.0.113.9, " + malformed + ", 10.0.0.2");
+
+            assertThat(resolver.resolve(request)).as(malformed).isEqualTo(address("10.0.0.2"));
+        }
+    }
+
+    @Test
+    void forwardedStopsAtTheFirstUntrustedHop() throws Exception {
+        MockHttpServletRequest request = request("10.0.0.1");
+        request.addHeader("Forwarded",
+                "for=198.51.100.1, for=\"[2001:db8::7]:4711\";proto=https, proto=https;For=10.0.0.2");
+
+        assertThat(resolver.resolve(request)).isEqualTo(address("2001:db8::7"));
+    }
+
+    @Test
+    void forwardedTakesPrecedenceOverXForwardedFor() throws Exception {
+        MockHttpServletRequest request = request("10.0.0.1");
+        request.addHeader("Forwarded", "for=203.0.113.5");
+        request.addHeader("X-Forwarded-For", "198.51.100.9");
+
+        assertThat(resolver.resolve(request)).isEqualTo(address("203.0.113.5"));
+    }
+
+    @Test
+    void obfuscatedOrMissingForwardedNodeKeepsTheProxy() throws Exception {
+        for (String value : List.of("for=_hidden", "for=unknown", "proto=https;by=10.0.0.1", "for=\"\"")) {
+            MockHttpServletRequest request = request("10.0.0.1");
+            request.addHeader("Forwarded", value);
+
+            assertThat(resolver.resolve(request)).as(value).isEqualTo(address("10.0.0.1"));
+        }
+    }
+
+    private static MockHttpServletRequest request(String remoteAddr) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setRemoteAddr(remoteAddr);
+        return request;
+    }
+
+    private static InetAddress address(String literal) throws Exception {
+        return InetAddress.getByName(literal);
+    }
+}
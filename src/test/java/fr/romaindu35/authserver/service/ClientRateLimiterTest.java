@@ -0,0 +1,176 @@
+package fr.romaindu35.authserver.service;
+
+import fr.romaindu35.authserver.entity.OAuth2Client;
+import fr.romaindu35.authserver.repository.OAuth2ClientRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ClientRateLimiterTest {
+
+    // 10 requêtes/s : un jeton toutes les 100 ms, rafale de 5
+    private static final long INTERVAL = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final int BURST = 5;
+
+    private final ClientRateLimiter.Limit limit =
+            new ClientRateLimiter.Limit(new SimpleMeterRegistry(), "test", "caller", 10, BURST);
+
+    @Test
+    void fullBucketAdmitsTheBurstThenGivesTheRetryDelay() {
+        long now = 1_000_000_000L;
+        ClientRateLimiter.Bucket bucket = new ClientRateLimiter.Bucket(now);
+
+        for (int i = 0; i < BURST; i++) {
+            assertThat(bucket.tryAcquire(limit, now)).as("request %d", i).isZero();
+        }
+        assertThat(bucket.tryAcquire(limit, now)).isEqualTo(INTERVAL);
+    }
+
+    @Test
+    void rejectedRequestsDoNotConsumeTokens() {
+        long now = 0;
+        ClientRateLimiter.Bucket bucket = drained(now);
+
+        assertThat(bucket.tryAcquire(limit, now)).isEqualTo(INTERVAL);
+        assertThat(bucket.tryAcquire(limit, now + INTERVAL / 2)).isEqualTo(INTERVAL / 2);
+        assertThat(bucket.tryAcquire(limit, now + INTERVAL)).isZero();
+    }
+
+    @Test
+    void drainedBucketAdmitsOneRequestPerInterval() {
+        long now = 0;
+        ClientRateLimiter.Bucket bucket = drained(now);
+
+        for (int i = 1; i <= 10; i++) {
+            long t = now + i * INTERVAL;
+            assertThat(bucket.tryAcquire(limit, t)).isZero();
+            assertThat(bucket.tryAcquire(limit, t)).isEqualTo(INTERVAL);
+        }
+    }
+
+    @Test
+    void idleBucketRefillsUpToTheBurstOnly() {
+        long now = 0;
+        ClientRateLimiter.Bucket bucket = drained(now);
+        long later = now + 60 * INTERVAL;
+
+        for (int i = 0; i < BURST; i++) {
+            assertThat(bucket.tryAcquire(limit, later)).isZero();
+        }
+        assertThat(bucket.tryAcquire(limit, later)).isEqualTo(INTERVAL);
+        assertThat(limit.refillNanos()).isEqualTo(BURST * INTERVAL);
+    }
+
+    @Test
+    void survivesNanoTimeWraparound() {
+        long now = Long.MAX_VALUE - 2 * INTERVAL;
+        ClientRateLimiter.Bucket bucket = drained(now);
+
+        // Les heures suivantes dépassent Long.MAX_VALUE et deviennent négatives
+        assertThat(bucket.tryAcquire(limit, now + INTERVAL)).isZero();
+        assertThat(bucket.tryAcquire(limit, now + INTERVAL)).isEqualTo(INTERVAL);
+        // Deux intervalles plus tard, deux jetons de plus
+        assertThat(bucket.tryAcquire(limit, now + 3 * INTERVAL)).isZero();
+        assertThat(bucket.tryAcquire(limit, now + 3 * INTERVAL)).isZero();
+        assertThat(bucket.tryAcquire(limit, now + 3 * INTERVAL)).isEqualTo(INTERVAL);
+
+        long wrapped = now + 100 * INTERVAL;
+        assertThat(wrapped).isNegative();
+        for (int i = 0; i < BURST; i++) {
+            assertThat(bucket.tryAcquire(limit, wrapped)).isZero();
+        }
+        assertThat(bucket.tryAcquire(limit, wrapped)).isEqualTo(INTERVAL);
+    }
+
+    @Test
+    void burstOfOneAdmitsNoBackToBackRequests() {
+        ClientRateLimiter.Limit strict = new ClientRateLimiter.Limit(new SimpleMeterRegistry(), "test", "caller", 10, 1);
+        ClientRateLimiter.Bucket bucket = new ClientRateLimiter.Bucket(0);
+
+        assertThat(bucket.tryAcquire(strict, 0)).isZero();
+        assertThat(bucket.tryAcquire(strict, 0)).isEqualTo(INTERVAL);
+        assertThat(bucket.tryAcquire(strict, INTERVAL)).isZero();
+    }
+
+    @Test
+    void callersOfAClientHaveTheirOwnBuckets() {
+        ClientRateLimiter limiter = limiter(clientRepository(OAuth2Client.ClientType.CLIENT));
+
+        for (int i = 0; i < 20; i++) {
+            assertThat(limiter.tryAcquire("spa", "203.0.113.1")).isZero();
+        }
+        assertThat(limiter.tryAcquire("spa", "203.0.113.1")).isPositive();
+        assertThat(limiter.tryAcquire("spa", "203.0.113.2")).isZero();
+    }
+
+    @Test
+    void unknownClientIdIsChargedToTheIpAndLookedUpOnce() {
+        OAuth2ClientRepository repository = mock(OAuth2ClientRepository.class);
+        when(repository.findByClientId(anyString())).thenReturn(Optional.empty());
+        ClientRateLimiter limiter = limiter(repository);
+
+        // Rafale de l'IP : 50, dont la première recherche en base
+        int admitted = 0;
+        while (limiter.tryAcquire("made-up", "203.0.113.1") == 0) {
+            admitted++;
+        }
+        assertThat(admitted).isEqualTo(49);
+        verify(repository, times(1)).findByClientId("made-up");
+    }
+
+    @Test
+    void onlyConfidentialClientsHaveAClientWideBucket() {
+        ClientRateLimiter publicLimiter = limiter(clientRepository(OAuth2Client.ClientType.CLIENT));
+        for (int i = 0; i < 1000; i++) {
+            assertThat(publicLimiter.tryAcquireAuthenticated("spa")).isZero();
+        }
+
+        ClientRateLimiter confidentialLimiter = limiter(clientRepository(OAuth2Client.ClientType.SERVER));
+        for (int i = 0; i < 100; i++) {
+            assertThat(confidentialLimiter.tryAcquireAuthenticated("backend")).isZero();
+        }
+        assertThat(confidentialLimiter.tryAcquireAuthenticated("backend")).isPositive();
+    }
+
+    @Test
+    void disabledLimiterAdmitsEverything() {
+        ClientRateLimiter limiter = new ClientRateLimiter(clientRepository(OAuth2Client.ClientType.CLIENT),
+                new SimpleMeterRegistry(), false, 1000, 5, 20, 20, 100, 50, 200, 10, 50);
+
+        for (int i = 0; i < 1000; i++) {
+            assertThat(limiter.tryAcquire("spa", "203.0.113.1")).isZero();
+        }
+    }
+
+    private ClientRateLimiter.Bucket drained(long now) {
+        ClientRateLimiter.Bucket bucket = new ClientRateLimiter.Bucket(now);
+        for (int i = 0; i < BURST; i++) {
+            assertThat(bucket.tryAcquire(limit, now)).isZero();
+        }
+        return bucket;
+    }
+
+    /**
+     * Limits of application.properties: the rates are low enough that a test loop stays within one interval.
+     */
+    private static ClientRateLimiter limiter(OAuth2ClientRepository repository) {
+        return new ClientRateLimiter(repository, new SimpleMeterRegistry(), true, 1000, 5, 20, 20, 100, 50, 200, 10, 50);
+    }
+
+    private static OAuth2ClientRepository clientRepository(OAuth2Client.ClientType type) {
+        OAuth2Client client = new OAuth2Client();
+        client.setClientType(type);
+        OAuth2ClientRepository repository = mock(OAuth2ClientRepository.class);
+        when(repository.findByClientId(anyString())).thenReturn(Optional.of(client));
+        return repository;
+    }
+}
@@ -0,0 +1,94 @@
+package fr.romaindu35.authserver.service;
+
+import com.maxmind.geoip2.DatabaseReader;
+import com.maxmind.geoip2.exception.AddressNotFoundException;
+import com.maxmind.geoip2.model.CityResponse;
+import com.maxmind.geoip2.record.City;
+import com.maxmind.geoip2.record.Country;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class GeoLocationServiceTest {
+
+    private DatabaseReader reader;
+    private GeoLocationService service;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        reader = mock(DatabaseReader.class);
+        Country country = mock(Country.class);
+        when(country.getName()).thenReturn("France");
+        City city = mock(City.class);
+        when(city.getName()).thenReturn("Paris");
+        CityResponse response = mock(CityResponse.class);
+        when(response.getCountry()).thenReturn(country);
+        when(response.getCity()).thenReturn(city);
+        when(reader.city(any(InetAddress.class))).thenReturn(response);
+
+        service = new GeoLocationService(new SimpleMeterRegistry(), 100, Duration.ofHours(1));
+        service.swapReader(reader);
+    }
+
+    @Test
+    void cacheHitSkipsTheReader() throws Exception {
+        InetAddress address = InetAddress.getByName("203.0.113.9");
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(service.getLocationFromIp(address))
+                    .isEqualTo(new GeoLocationService.LocationInfo("France", "Paris"));
+        }
+
+        verify(reader, times(1)).city(address);
+    }
+
+    @Test
+    void privateAddressesNeverReachTheReader() throws Exception {
+        for (String literal : List.of("10.1.2.3", "192.168.0.1", "172.16.0.1", "127.0.0.1", "169.254.1.1", "::1", "fe80::1", "0.0.0.0")) {
+            assertThat(service.getLocationFromIp(InetAddress.getByName(literal)))
+                    .as(literal)
+                    .isEqualTo(new GeoLocationService.LocationInfo(null, null));
+        }
+        assertThat(service.getLocationFromIp(null)).isEqualTo(new GeoLocationService.LocationInfo(null, null));
+
+        verify(reader, never()).city(any(InetAddress.class));
+    }
+
+    @Test
+    void addressMissingFromTheDatabaseIsCachedAsUnknown() throws Exception {
+        InetAddress address = InetAddress.getByName("198.51.100.1");
+        when(reader.city(address)).thenThrow(new AddressNotFoundException("not found"));
+
+        assertThat(service.getLocationFromIp(address)).isEqualTo(new GeoLocationService.LocationInfo(null, null));
+        assertThat(service.getLocationFromIp(address)).isEqualTo(new GeoLocationService.LocationInfo(null, null));
+
+        verify(reader, times(1)).city(address);
+    }
+
+    @Test
+    void withoutDatabaseEveryAddressIsUnknown() throws Exception {
+        GeoLocationService disabled = new GeoLocationService(new SimpleMeterRegistry(), 100, Duration.ofHours(1));
+
+        assertThat(disabled.getLocationFromIp(InetAddress.getByName("203.0.113.9")))
+                .isEqualTo(new GeoLocationService.LocationInfo(null, null));
+    }
+
+    @Test
+    void swappedReaderClosesThePreviousOne() throws Exception {
+        service.swapReader(mock(DatabaseReader.class));
+
+        verify(reader).close();
+    }
+}
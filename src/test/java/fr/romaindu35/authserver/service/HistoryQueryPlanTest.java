@@ -0,0 +1,158 @@
+package fr.romaindu35.authserver.service;
+
+import fr.romaindu35.authserver.PostgresTestSupport;
+import fr.romaindu35.authserver.repository.OAuth2AuthorizationHistoryRepository;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.jpa.repository.Query;
+
+import java.lang.reflect.Method;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Plans of the history queries on a populated table: each one must stay on the index it was written for.
+ * Repository queries are read from their @Query annotation, so a rewritten query is checked as-is.
+ */
+class HistoryQueryPlanTest extends PostgresTestSupport {
+
+    private static final Pattern NAMED_PARAMETER = Pattern.compile("(?<!:):(\\w+)");
+
+    private static final int USERS = 200;
+    private static final int CLIENTS = 50;
+    private static final int ENTRIES_PER_PAIR = 5;
+
+    private static UUID userId;
+    private static String username;
+    private static UUID clientId;
+
+    @BeforeAll
+    static void populate() {
+        jdbcTemplate.update("""
+                INSERT INTO users (username)
+                SELECT 'plan-user-' || u FROM generate_series(1, ?) u
+                """, USERS);
+        jdbcTemplate.update("""
+                INSERT INTO oauth2_client (client_id, client_name, client_type, owner_id)
+                SELECT 'plan-client-' || c, 'plan-client-' || c, 'SERVER',
+                       (SELECT id FROM users WHERE username = 'plan-user-1')
+                FROM generate_series(1, ?) c
+                """, CLIENTS);
+        // Entrée s = 1 active pour un client sur deux, les autres clients n'ont plus que des entrées inactives
+        jdbcTemplate.update("""
+                WITH plan_clients AS (
+                    SELECT id, substring(client_id FROM 13)::int AS n
+                    FROM oauth2_client
+                    WHERE client_id LIKE 'plan-client-%'
+                )
+                INSERT INTO oauth2_authorization_history
+                    (user_id, client_id, authorized_scopes, ip_address, granted_at, revoked_at, is_active)
+                SELECT u.id, c.id, '{openid}', '127.0.0.1',
+                       now() - s * interval '1 day',
+                       CASE WHEN s % 3 = 0 THEN now() - s * interval '1 day' + interval '1 hour' END,
+                       s = 1 AND c.n % 2 = 0
+                FROM users u
+                CROSS JOIN plan_clients c
+                CROSS JOIN generate_series(1, ?) s
+                WHERE u.username LIKE 'plan-user-%'
+                """, ENTRIES_PER_PAIR);
+        jdbcTemplate.execute("ANALYZE oauth2_authorization_history");
+
+        username = "plan-user-42";
+        userId = jdbcTemplate.queryForObject("SELECT id FROM users WHERE username = ?", UUID.class, username);
+        clientId = jdbcTemplate.queryForObject(
+                "SELECT id FROM oauth2_client WHERE client_id = 'plan-client-8'", UUID.class);
+    }
+
+    @Test
+    void activeLookupUsesActivePairIndex() {
+        String plan = explainRepositoryQuery("findByUserIdAndClientIdAndIsActiveTrue",
+                Map.of("userId", userId, "clientId", clientId));
+
+        assertThat(plan).contains("idx_authorization_history_active_pair");
+    }
+
+    @Test
+    void archiveActiveUsesActivePairIndex() {
+        String plan = explainRepositoryQuery("archiveActive",
+                Map.of("userId", userId, "clientId", clientId));
+
+        assertThat(plan).contains("idx_authorization_history_active_pair");
+    }
+
+    @Test
+    void timelineHeadUsesTimelineIndex() {
+        String plan = explainRepositoryQuery("findTimelineHead",
+                Map.of("userId", userId, "clientId", clientId, "limit", 20));
+
+        assertThat(plan).contains("idx_authorization_history_timeline");
+        assertThat(plan).doesNotContain("Sort");
+    }
+
+    @Test
+    void timelinePageUsesTimelineIndex() {
+        String plan = explainRepositoryQuery("findTimelinePageBefore",
+                Map.of("userId", userId, "clientId", clientId,
+                        "grantedAt", Timestamp.from(Instant.now().minusSeconds(3600)),
+                        "id", new UUID(-1L, -1L), "limit", 20));
+
+        assertThat(plan).contains("idx_authorization_history_timeline");
+        assertThat(plan).doesNotContain("Sort");
+    }
+
+    @Test
+    void activeDashboardPageStaysOnUserScopedIndexes() {
+        String plan = explain(AuthorizationDashboardService.ACTIVE_SQL, dashboardParameters());
+
+        assertThat(plan).containsAnyOf("idx_authorization_history_user_client_active",
+                "idx_authorization_history_active_pair");
+        assertThat(plan).doesNotContain("Seq Scan on oauth2_authorization_history");
+    }
+
+    @Test
+    void inactiveDashboardPageStaysOnUserScopedIndexes() {
+        String plan = explain(AuthorizationDashboardService.INACTIVE_SQL, dashboardParameters());
+
+        assertThat(plan).contains("idx_authorization_history_inactive_pair");
+        assertThat(plan).doesNotContain("Seq Scan on oauth2_authorization_history");
+    }
+
+    private static Object[] dashboardParameters() {
+        return new Object[]{userId, username, Timestamp.valueOf("9999-12-31 00:00:00"), new UUID(-1L, -1L),
+                AuthorizationDashboardService.PAGE_SIZE + 1};
+    }
+
+    private static String explainRepositoryQuery(String methodName, Map<String, Object> parameters) {
+        Method method = Arrays.stream(OAuth2AuthorizationHistoryRepository.class.getMethods())
+                .filter(m -> m.getName().equals(methodName))
+                .findFirst()
+                .orElseThrow();
+        String sql = method.getAnnotation(Query.class).value();
+
+        // Paramètres nommés de Spring Data remplacés par des paramètres positionnels JDBC
+        List<Object> values = new ArrayList<>();
+        Matcher matcher = NAMED_PARAMETER.matcher(sql);
+        StringBuilder positional = new StringBuilder();
+        while (matcher.find()) {
+            Object value = parameters.get(matcher.group(1));
+            assertThat(value).as("parameter :%s of %s", matcher.group(1), methodName).isNotNull();
+            values.add(value);
+            matcher.appendReplacement(positional, "?");
+        }
+        matcher.appendTail(positional);
+        return explain(positional.toString(), values.toArray());
+    }
+
+    private static String explain(String sql, Object... parameters) {
+        return String.join("\n", jdbcTemplate.queryForList("EXPLAIN " + sql, String.class, parameters));
+    }
+}
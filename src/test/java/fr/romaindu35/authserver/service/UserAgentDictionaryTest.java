@@ -0,0 +1,187 @@
+package fr.romaindu35.authserver.service;
+
+import eu.bitwalker.useragentutils.UserAgent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.MockedStatic;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+
+class UserAgentDictionaryTest {
+
+    private static final String CHROME =
+            "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/126.0.0.0 Safari/537.36";
+
+    private InMemoryJdbcTemplate jdbcTemplate;
+    private UserAgentDictionary dictionary;
+    private MockedStatic<UserAgent> parser;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = new InMemoryJdbcTemplate();
+        dictionary = new UserAgentDictionary(jdbcTemplate, new SimpleMeterRegistry(), 100);
+        parser = mockStatic(UserAgent.class, CALLS_REAL_METHODS);
+    }
+
+    @AfterEach
+    void tearDown() {
+        parser.close();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void cacheHitSkipsTheParserAndTheDatabase() {
+        UserAgentDictionary.Entry first = dictionary.intern(CHROME);
+        int queries = jdbcTemplate.queries;
+
+        for (int i = 0; i < 100; i++) {
+            assertThat(dictionary.intern(CHROME)).isEqualTo(first);
+        }
+
+        assertThat(first.browser()).startsWith("Chrome");
+        assertThat(first.deviceType()).isEqualTo("Computer");
+        assertThat(jdbcTemplate.queries).isEqualTo(queries);
+        parser.verify(() -> UserAgent.parseUserAgentString(anyString()), times(1));
+    }
+
+    @Test
+    void userAgentKnownInTheTableIsNotParsedAgain() {
+        dictionary.intern(CHROME);
+        // Autre instance (autre nœud, ou redémarrage) : la table est déjà remplie
+        UserAgentDictionary other = new UserAgentDictionary(jdbcTemplate, new SimpleMeterRegistry(), 100);
+
+        assertThat(other.intern(CHROME).id()).isEqualTo(1);
+
+        parser.verify(() -> UserAgent.parseUserAgentString(anyString()), times(1));
+    }
+
+    @Test
+    void resolveAfterInternMakesNoQuery() {
+        UserAgentDictionary.Entry entry = dictionary.intern(CHROME);
+        int queries = jdbcTemplate.queries;
+
+        assertThat(dictionary.resolve(entry.id())).isEqualTo(entry);
+        assertThat(dictionary.resolve(null)).isNull();
+
+        assertThat(jdbcTemplate.queries).isEqualTo(queries);
+    }
+
+    @Test
+    void insertedEntryIsCachedOnlyOnceCommitted() {
+        TransactionSynchronizationManager.initSynchronization();
+        UserAgentDictionary.Entry entry = dictionary.intern(CHROME);
+        assertThat(TransactionSynchronizationManager.getSynchronizations()).hasSize(1);
+
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            synchronization.afterCommit();
+        }
+        TransactionSynchronizationManager.clearSynchronization();
+
+        int queries = jdbcTemplate.queries;
+        assertThat(dictionary.intern(CHROME)).isEqualTo(entry);
+        assertThat(dictionary.resolve(entry.id())).isEqualTo(entry);
+        assertThat(jdbcTemplate.queries).isEqualTo(queries);
+    }
+
+    @Test
+    void rolledBackEntryIsNotCached() {
+        TransactionSynchronizationManager.initSynchronization();
+        UserAgentDictionary.Entry entry = dictionary.intern(CHROME);
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+        }
+        TransactionSynchronizationManager.clearSynchronization();
+        jdbcTemplate.rollback();
+
+        int queries = jdbcTemplate.queries;
+        assertThat(dictionary.resolve(entry.id())).isNull();
+        assertThat(jdbcTemplate.queries).isGreaterThan(queries);
+    }
+
+    @Test
+    void longUserAgentsSharingTheStoredPrefixGetDistinctEntries() {
+        String prefix = CHROME + " " + "x".repeat(UserAgentDictionary.MAX_USER_AGENT_LENGTH);
+        UserAgentDictionary.Entry first = dictionary.intern(prefix + " A");
+        UserAgentDictionary.Entry second = dictionary.intern(prefix + " B");
+
+        assertThat(first.id()).isNotEqualTo(second.id());
+        assertThat(first.userAgent()).hasSize(UserAgentDictionary.MAX_USER_AGENT_LENGTH).isEqualTo(second.userAgent());
+        assertThat(dictionary.intern(prefix + " A")).isEqualTo(first);
+        parser.verify(() -> UserAgent.parseUserAgentString(anyString()), times(2));
+    }
+
+    @Test
+    void unknownIdIsNotCached() {
+        assertThat(dictionary.resolve(42)).isNull();
+        assertThat(dictionary.resolve(42)).isNull();
+
+        assertThat(jdbcTemplate.queries).isEqualTo(2);
+        parser.verify(() -> UserAgent.parseUserAgentString(anyString()), never());
+    }
+
+    /**
+     * user_agent_dictionary table in memory, answering the three statements of UserAgentDictionary.
+     */
+    private static final class InMemoryJdbcTemplate extends JdbcTemplate {
+
+        private final Map<String, UserAgentDictionary.Entry> byHash = new HashMap<>();
+        private final Map<Integer, UserAgentDictionary.Entry> byId = new HashMap<>();
+        private final List<String> uncommitted = new ArrayList<>();
+        private int queries;
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> List<T> query(String sql, RowMapper<T> rowMapper, Object... args) {
+            queries++;
+            UserAgentDictionary.Entry entry;
+            if (sql.contains("INSERT INTO user_agent_dictionary")) {
+                String hash = (String) args[0];
+                if (byHash.containsKey(hash)) {
+                    return List.of();
+                }
+                entry = new UserAgentDictionary.Entry(byId.size() + 1,
+                        (String) args[1], (String) args[2], (String) args[3], (String) args[4]);
+                byHash.put(hash, entry);
+                byId.put(entry.id(), entry);
+                uncommitted.add(hash);
+            } else if (sql.contains("WHERE user_agent_hash = ?")) {
+                entry = byHash.get((String) args[0]);
+            } else if (sql.contains("WHERE id = ?")) {
+                entry = byId.get((Integer) args[0]);
+            } else {
+                throw new IllegalArgumentException(sql);
+            }
+            return entry != null ? List.of((T) entry) : List.of();
+        }
+
+        @Override
+        public <T> T queryForObject(String sql, RowMapper<T> rowMapper, Object... args) {
+            return query(sql, rowMapper, args).getFirst();
+        }
+
+        void rollback() {
+            for (String hash : uncommitted) {
+                byId.remove(byHash.remove(hash).id());
+            }
+            uncommitted.clear();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package fr.romaindu35.authserver.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CidrTrieTest {
+
+    @Test
+    void matchesIpv4BlockEdges() {
+        CidrTrie trie = CidrTrie.compile(List.of("10.0.0.0/8", "192.0.2.0/31"));
+
+        assertThat(contains(trie, "10.0.0.0")).isTrue();
+        assertThat(contains(trie, "10.255.255.255")).isTrue();
+        assertThat(contains(trie, "9.255.255.255")).isFalse();
+        assertThat(contains(trie, "11.0.0.0")).isFalse();
+
+        assertThat(contains(trie, "192.0.2.0")).isTrue();
+        assertThat(contains(trie, "192.0.2.1")).isTrue();
+        assertThat(contains(trie, "192.0.2.2")).isFalse();
+        assertThat(contains(trie, "192.0.1.255")).isFalse();
+    }
+
+    @Test
+    void matchesIpv6BlockEdges() {
+        CidrTrie trie = CidrTrie.compile(List.of("fc00::/7"));
+
+        assertThat(contains(trie, "fc00::")).isTrue();
+        assertThat(contains(trie, "fdff:ffff:ffff:ffff:ffff:ffff:ffff:ffff")).isTrue();
+        assertThat(contains(trie, "fbff:ffff:ffff:ffff:ffff:ffff:ffff:ffff")).isFalse();
+        assertThat(contains(trie, "fe00::")).isFalse();
+    }
+
+    @Test
+    void fullLengthPrefixMatchesOneAddress() {
+        CidrTrie trie = CidrTrie.compile(List.of("2001:db8::1/128", "192.0.2.7/32", "198.51.100.7"));
+
+        assertThat(contains(trie, "2001:db8::1")).isTrue();
+        assertThat(contains(trie, "2001:db8::")).isFalse();
+        assertThat(contains(trie, "2001:db8::2")).isFalse();
+        assertThat(contains(trie, "192.0.2.7")).isTrue();
+        assertThat(contains(trie, "192.0.2.6")).isFalse();
+        assertThat(contains(trie, "198.51.100.7")).isTrue();
+        assertThat(contains(trie, "198.51.100.8")).isFalse();
+    }
+
+    @Test
+    void zeroLengthPrefixMatchesItsWholeFamilyOnly() {
+        CidrTrie ipv4 = CidrTrie.compile(List.of("0.0.0.0/0"));
+        assertThat(contains(ipv4, "0.0.0.0")).isTrue();
+        assertThat(contains(ipv4, "255.255.255.255")).isTrue();
+        assertThat(contains(ipv4, "::1")).isFalse();
+
+        CidrTrie ipv6 = CidrTrie.compile(List.of("::/0"));
+        assertThat(contains(ipv6, "::")).isTrue();
+        assertThat(contains(ipv6, "ffff:ffff:ffff:ffff:ffff:ffff:ffff:ffff")).isTrue();
+        assertThat(contains(ipv6, "203.0.113.9")).isFalse();
+    }
+
+    @Test
+    void ignoresHostBitsOfTheBlock() {
+        CidrTrie trie = CidrTrie.compile(List.of("10.1.2.3/8"));
+
+        assertThat(contains(trie, "10.200.0.1")).isTrue();
+        assertThat(contains(trie, "11.1.2.3")).isFalse();
+    }
+
+    @Test
+    void ipv4MappedBlockCoversTheIpv4Block() {
+        CidrTrie trie = CidrTrie.compile(List.of("::ffff:10.0.0.0/104"));
+
+        assertThat(contains(trie, "10.1.2.3")).isTrue();
+        assertThat(contains(trie, "::ffff:10.1.2.3")).isTrue();
+        assertThat(contains(trie, "11.0.0.0")).isFalse();
+    }
+
+    @Test
+    void nestedBlocksMatchTheWidest() {
+        CidrTrie trie = CidrTrie.compile(List.of("10.1.0.0/16", "10.0.0.0/8"));
+
+        assertThat(contains(trie, "10.1.0.1")).isTrue();
+        assertThat(contains(trie, "10.2.0.1")).isTrue();
+    }
+
+    @Test
+    void emptyTrieMatchesNothing() {
+        CidrTrie trie = CidrTrie.compile(List.of(" ", ""));
+
+        assertThat(contains(trie, "10.0.0.1")).isFalse();
+        assertThat(contains(trie, "::1")).isFalse();
+    }
+
+    @Test
+    void rejectsInvalidBlocks() {
+        for (String cidr : List.of("10.0.0.0/33", "::/129", "10.0.0.0/-1", "10.0.0.0/x", "10.0.0.0/", "not-an-ip/8", "10.0.0/8")) {
+            assertThatThrownBy(() -> CidrTrie.compile(List.of(cidr)))
+                    .as(cidr)
+                    .isInstanceOf(IllegalArgumentException.class);
+        }
+    }
+
+    private static boolean contains(CidrTrie trie, String address) {
+        IpAddressBits bits = new IpAddressBits();
+        assertThat(bits.parse(address)).as(address).isTrue();
+        return trie.contains(bits);
+    }
+}
@@ -0,0 +1,143 @@
+package fr.romaindu35.authserver.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IpAddressBitsTest {
+
+    private final IpAddressBits bits = new IpAddressBits();
+
+    @Test
+    void parsesIpv4() {
+        assertThat(bits.parse("192.0.2.1")).isTrue();
+        assertThat(bits.isIpv4()).isTrue();
+        assertThat(bits.low()).isEqualTo(0xC0000201L);
+        assertThat(bits.bit(0)).isEqualTo(1);
+        assertThat(bits.bit(2)).isZero();
+        assertThat(bits.bit(31)).isEqualTo(1);
+    }
+
+    @Test
+    void parsesIpv4Edges() {
+        assertThat(bits.parse("0.0.0.0")).isTrue();
+        assertThat(bits.low()).isZero();
+        assertThat(bits.parse("255.255.255.255")).isTrue();
+        assertThat(bits.low()).isEqualTo(0xFFFFFFFFL);
+    }
+
+    @Test
+    void rejectsMalformedIpv4() {
+        assertThat(bits.parse("256.0.0.1")).isFalse();
+        assertThat(bits.parse("1.2.3")).isFalse();
+        assertThat(bits.parse("1.2.3.4.5")).isFalse();
+        assertThat(bits.parse("1.2.3.")).isFalse();
+        assertThat(bits.parse(".1.2.3")).isFalse();
+        assertThat(bits.parse("1..2.3")).isFalse();
+        assertThat(bits.parse("0001.2.3.4")).isFalse();
+        assertThat(bits.parse("a.b.c.d")).isFalse();
+        assertThat(bits.parse("1.2.3.4 ")).isFalse();
+        assertThat(bits.parse("")).isFalse();
+        assertThat(bits.parse("unknown")).isFalse();
+        assertThat(bits.parse(null)).isFalse();
+    }
+
+    @Test
+    void parsesIpv6() {
+        assertThat(bits.parse("2001:db8::1")).isTrue();
+        assertThat(bits.isIpv4()).isFalse();
+        assertThat(bits.high()).isEqualTo(0x20010DB800000000L);
+        assertThat(bits.low()).isEqualTo(1L);
+
+        assertThat(bits.parse("1:2:3:4:5:6:7:8")).isTrue();
+        assertThat(bits.high()).isEqualTo(0x0001000200030004L);
+        assertThat(bits.low()).isEqualTo(0x0005000600070008L);
+
+        assertThat(bits.parse("1::")).isTrue();
+        assertThat(bits.high()).isEqualTo(0x0001000000000000L);
+        assertThat(bits.low()).isZero();
+    }
+
+    @Test
+    void parsesIpv6Edges() {
+        assertThat(bits.parse("::")).isTrue();
+        assertThat(bits.isIpv4()).isFalse();
+        assertThat(bits.high()).isZero();
+        assertThat(bits.low()).isZero();
+
+        assertThat(bits.parse("::1")).isTrue();
+        assertThat(bits.bit(127)).isEqualTo(1);
+        assertThat(bits.bit(126)).isZero();
+
+        assertThat(bits.parse("ffff:ffff:ffff:ffff:ffff:ffff:ffff:ffff")).isTrue();
+        assertThat(bits.high()).isEqualTo(-1L);
+        assertThat(bits.low()).isEqualTo(-1L);
+        assertThat(bits.bit(0)).isEqualTo(1);
+        assertThat(bits.bit(64)).isEqualTo(1);
+    }
+
+    @Test
+    void ignoresZoneId() {
+        assertThat(bits.parse("fe80::1%eth0")).isTrue();
+        assertThat(bits.high()).isEqualTo(0xFE80000000000000L);
+        assertThat(bits.low()).isEqualTo(1L);
+    }
+
+    @Test
+    void rejectsMalformedIpv6() {
+        assertThat(bits.parse(":::")).isFalse();
+        assertThat(bits.parse("1::2::3")).isFalse();
+        assertThat(bits.parse(":1::")).isFalse();
+        assertThat(bits.parse("1:")).isFalse();
+        assertThat(bits.parse("1:2:3:4:5:6:7")).isFalse();
+        assertThat(bits.parse("1:2:3:4:5:6:7:8:9")).isFalse();
+        assertThat(bits.parse("1:2:3:4:5:6:7::8")).isFalse();
+        assertThat(bits.parse("12345::")).isFalse();
+        assertThat(bits.parse("g::1")).isFalse();
+        assertThat(bits.parse("::ffff:1.2.3")).isFalse();
+        assertThat(bits.parse("::1.2.3.4:5")).isFalse();
+    }
+
+    @Test
+    void normalizesIpv4MappedAddresses() throws Exception {
+        assertThat(bits.parse("::ffff:192.0.2.1")).isTrue();
+        assertThat(bits.isIpv4()).isTrue();
+        assertThat(bits.low()).isEqualTo(0xC0000201L);
+
+        assertThat(bits.parse("::ffff:c000:201")).isTrue();
+        assertThat(bits.isIpv4()).isTrue();
+        assertThat(bits.toInetAddress()).isInstanceOf(Inet4Address.class)
+                .isEqualTo(InetAddress.getByName("192.0.2.1"));
+    }
+
+    @Test
+    void parsesARange() {
+        assertThat(bits.parse("[2001:db8::7]:4711", 1, 12)).isTrue();
+        assertThat(bits.low()).isEqualTo(7L);
+        assertThat(bits.parse("x10.0.0.1y", 1, 9)).isTrue();
+        assertThat(bits.low()).isEqualTo(0x0A000001L);
+    }
+
+    @Test
+    void failedParseKeepsThePreviousAddress() {
+        assertThat(bits.parse("10.0.0.1")).isTrue();
+
+        assertThat(bits.parse("10.0.0.256")).isFalse();
+        assertThat(bits.parse("1::2::3")).isFalse();
+
+        assertThat(bits.isIpv4()).isTrue();
+        assertThat(bits.low()).isEqualTo(0x0A000001L);
+    }
+
+    @Test
+    void buildsTheInetAddress() throws Exception {
+        assertThat(bits.parse("2001:db8::1")).isTrue();
+        assertThat(bits.toInetAddress()).isEqualTo(InetAddress.getByName("2001:db8::1"));
+
+        assertThat(bits.parse("203.0.113.9")).isTrue();
+        assertThat(bits.toInetAddress()).isEqualTo(InetAddress.getByName("203.0.113.9"));
+    }
+}
@@ -9,6 +9,17 @@ declare module '*.css?inline' {
   export default content;
 }
 
+// Images imported through Vite resolve to their fingerprinted URL
+declare module '*.png' {
+  const src: string;
+  export default src;
+}
+
+declare module '*.svg' {
+  const src: string;
+  export default src;
+}
+
 // Allow any CSS Custom Properties
 declare module 'csstype' {
   interface Properties {
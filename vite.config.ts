@@ -1,15 +1,43 @@
-import { UserConfigFn } from 'vite';
+import { Plugin, UserConfigFn } from 'vite';
 import { overrideVaadinConfig } from './vite.generated';
 import path from "path"
+import fs from "fs"
+import { brotliCompressSync, constants, gzipSync } from "zlib"
 import tailwindcss from "@tailwindcss/vite"
 
+// Variantes .gz et .br du bundle de production, écrites une fois au build : le serveur de fichiers statiques
+// de Vaadin choisit la variante selon Accept-Encoding au lieu de compresser à chaque requête
+function precompress(): Plugin {
+    return {
+        name: "yoxo-precompress",
+        apply: "build",
+        writeBundle(options, bundle) {
+            if (!options.dir) return;
+            for (const fileName of Object.keys(bundle)) {
+                if (!/\.(js|css|html|svg|json)$/.test(fileName)) continue;
+                const file = path.join(options.dir, fileName);
+                const content = fs.readFileSync(file);
+                if (content.length < 1024) continue;
+                fs.writeFileSync(`${file}.gz`, gzipSync(content, {level: 9}));
+                if (!fs.existsSync(`${file}.br`)) {
+                    fs.writeFileSync(`${file}.br`, brotliCompressSync(content, {
+                        params: {[constants.BROTLI_PARAM_QUALITY]: constants.BROTLI_MAX_QUALITY},
+                    }));
+                }
+            }
+        },
+    };
+}
+
 const customConfig: UserConfigFn = (env) => ({
   // Here you can add custom Vite parameters
   // https://vitejs.dev/config/
-    plugins: [tailwindcss()],
+    plugins: [tailwindcss(), precompress()],
     resolve: {
         alias: {
             "@": path.resolve(__dirname, "./src/main/frontend"),
+            // Fichiers publics importés dans les vues : Vite les copie dans le bundle avec un nom empreinté
+            "@public": path.resolve(__dirname, "./src/main/resources/META-INF/resources"),
         },
     },
 });